@@ -0,0 +1,205 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentPage;
+import com.google.sps.data.CommentViews;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the comment read and write paths of DataServlet.
+ *
+ * <p>The servlet runs in-process against the App Engine local datastore, memcache and users
+ * services, with the stub sentiment analyzer so no network calls are made. Each trial loads
+ * a synthetic set of comments. The local datastore answers queries by sorting every entity of
+ * the kind in memory, so query numbers show how our code scales, not production latency.
+ *
+ * <p>Run with `mvn package` and then `java -jar target/benchmarks.jar`, adding for example
+ * `-p numComments=1000` to pick a dataset size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g", "-Dsentiment.analyzer=stub"})
+public class CommentBenchmarks {
+  private static final int PAGE_SIZE = 20;
+  private static final int PUT_BATCH_SIZE = 500;
+  private static final String[] NAMES = {"Amelia", "Ava", "Emma", "Isabella", "James", "Liam"};
+  private static final String[] MESSAGES = {
+    "Great portfolio, I love the particles on the landing page!",
+    "Nice work on the comments section.",
+    "The anime section could use more recommendations.",
+    "Kevin Durant is a great pick for a favourite player.",
+  };
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int numComments;
+
+  private final Gson gson = new Gson();
+  private LocalServiceTestHelper helper;
+  private DataServlet servlet;
+
+  private Entity commentEntity;
+  private CommentPage commentPage;
+  private HttpServletRequest firstPageRequest;
+  private HttpServletRequest datastorePageRequest;
+  private HttpServletRequest postRequest;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    helper = new LocalServiceTestHelper(
+        new LocalDatastoreServiceTestConfig()
+            .setNoStorage(true)
+            .setDefaultHighRepJobPolicyUnappliedJobPercentage(0),
+        new LocalMemcacheServiceTestConfig(),
+        new LocalUserServiceTestConfig(),
+        // Posted comments only add a moderation task, which is not run.
+        new LocalTaskQueueTestConfig()
+            .setQueueXmlPath("../src/main/webapp/WEB-INF/queue.xml")
+            .setDisableAutoTaskExecution(true))
+        .setEnvIsLoggedIn(true)
+        .setEnvEmail("benchmark@example.com")
+        .setEnvAuthDomain("example.com");
+    helper.setUp();
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Random random = new Random(42);
+    List<Entity> batch = new ArrayList<>(PUT_BATCH_SIZE);
+    for (int i = 0; i < numComments; i++) {
+      batch.add(createCommentEntity(random, i));
+      if (batch.size() == PUT_BATCH_SIZE) {
+        datastore.put(batch);
+        batch.clear();
+      }
+    }
+    datastore.put(batch);
+
+    servlet = new DataServlet();
+
+    // A comment and a page of comments as they come back from the datastore.
+    Query query = new Query("Comment").addSort("timestamp", SortDirection.DESCENDING);
+    QueryResultList<Entity> firstPage = datastore.prepare(query)
+        .asQueryResultList(FetchOptions.Builder.withLimit(CommentViews.CAPACITY + PAGE_SIZE));
+    commentEntity = firstPage.get(0);
+    List<Comment> comments = new ArrayList<>();
+    for (Entity entity : firstPage.subList(0, PAGE_SIZE)) {
+      comments.add(Comment.fromEntity(entity));
+    }
+    commentPage = new CommentPage(comments, null);
+
+    // A cursor past the cached views so the page has to be read from the datastore.
+    String cursor = datastore.prepare(query)
+        .asQueryResultList(FetchOptions.Builder.withLimit(CommentViews.CAPACITY))
+        .getCursor()
+        .toWebSafeString();
+
+    Map<String, String> firstPageParameters = new HashMap<>();
+    firstPageParameters.put("num-comments", Integer.toString(PAGE_SIZE));
+    firstPageRequest = FakeHttp.request(firstPageParameters);
+
+    Map<String, String> datastorePageParameters = new HashMap<>(firstPageParameters);
+    datastorePageParameters.put("page-token", cursor);
+    datastorePageRequest = FakeHttp.request(datastorePageParameters);
+
+    Map<String, String> postParameters = new HashMap<>();
+    postParameters.put("name", "Benchmark");
+    postParameters.put("message", MESSAGES[0]);
+    postRequest = FakeHttp.request(postParameters);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Benchmark
+  public Comment entityToComment() {
+    return Comment.fromEntity(commentEntity);
+  }
+
+  @Benchmark
+  public String serializePage() {
+    return gson.toJson(commentPage);
+  }
+
+  @Benchmark
+  public Query makeQueryFromParams() {
+    return servlet.makeQuery(
+        servlet.getSortProperty(firstPageRequest),
+        servlet.getSortDirection(firstPageRequest));
+  }
+
+  @Benchmark
+  public void doGetFromViews() throws IOException {
+    servlet.doGet(firstPageRequest, FakeHttp.response());
+  }
+
+  @Benchmark
+  public void doGetFromDatastore() throws IOException {
+    servlet.doGet(datastorePageRequest, FakeHttp.response());
+  }
+
+  @Benchmark
+  public void doPost() throws IOException {
+    servlet.doPost(postRequest, FakeHttp.response());
+  }
+
+  private static Entity createCommentEntity(Random random, int index) {
+    String name = NAMES[random.nextInt(NAMES.length)];
+    Entity entity = new Entity("Comment");
+    entity.setProperty("name", name);
+    entity.setProperty("email", name.toLowerCase() + index + "@example.com");
+    entity.setProperty("message", MESSAGES[random.nextInt(MESSAGES.length)]);
+    entity.setProperty("score", -0.3 + 1.3 * random.nextDouble());
+    entity.setProperty("timestamp", 1590000000000L + index * 1000L);
+    return entity;
+  }
+}
@@ -0,0 +1,98 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Minimal in-process requests and responses for driving servlets from benchmarks. */
+final class FakeHttp {
+
+  private FakeHttp() {}
+
+  /**
+   * Create a request that only answers parameter lookups.
+   *
+   * @param parameters The request parameters.
+   * @return a request with the given parameters and no headers.
+   */
+  static HttpServletRequest request(Map<String, String> parameters) {
+    return (HttpServletRequest) Proxy.newProxyInstance(FakeHttp.class.getClassLoader(),
+        new Class<?>[] {HttpServletRequest.class}, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getParameter":
+              return parameters.get(args[0]);
+            case "getParameterMap":
+              return Collections.unmodifiableMap(parameters);
+            case "getDateHeader":
+              return -1L;
+            default:
+              return null;
+          }
+        });
+  }
+
+  /**
+   * Create a response that throws away everything written to it, so benchmarks measure the
+   * cost of producing the body without keeping it.
+   *
+   * @return a response whose headers and body are discarded.
+   */
+  static HttpServletResponse response() {
+    ServletOutputStream body = new DiscardingOutputStream();
+    PrintWriter writer = new PrintWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8));
+    return (HttpServletResponse) Proxy.newProxyInstance(FakeHttp.class.getClassLoader(),
+        new Class<?>[] {HttpServletResponse.class}, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getOutputStream":
+              return body;
+            case "getWriter":
+              return writer;
+            case "containsHeader":
+            case "isCommitted":
+              return false;
+            case "getCharacterEncoding":
+              return StandardCharsets.UTF_8.name();
+            default:
+              return null;
+          }
+        });
+  }
+
+  /** Output stream that counts nothing and keeps nothing. */
+  private static final class DiscardingOutputStream extends ServletOutputStream {
+    @Override
+    public void write(int b) {}
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {}
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener listener) {}
+  }
+}
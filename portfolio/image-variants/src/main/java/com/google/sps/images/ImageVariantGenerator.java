@@ -0,0 +1,185 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.images;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Tool that writes the smaller copies of images that the pages refer to, run whenever the
+ * images or the pages change. The copies are committed and served as static files like the
+ * originals.
+ *
+ * <p>First every img tag with a src like "images/self_portrait.jpeg" gets a srcset listing a
+ * copy at each width in WIDTHS that is smaller than the image, replacing any srcset written
+ * by an earlier run. Then every copy the pages refer to, such as images/self_portrait-160.jpg,
+ * is written as a progressive JPEG with no metadata, and copies they no longer refer to are
+ * deleted. Pages can also refer to copies themselves, such as a srcset set by a script.
+ *
+ * <p>Usage: ImageVariantGenerator &lt;images dir&gt; &lt;page&gt;...
+ */
+public final class ImageVariantGenerator {
+  /** The widths copies are made at, in pixels. */
+  static final int[] WIDTHS = {160, 320, 640, 960, 1280, 1920};
+
+  private static final float QUALITY = 0.82f;
+  private static final String SIZES = "(max-width: 768px) 100vw, 50vw";
+  /** The src attribute of an img tag, and the srcset and sizes an earlier run gave it. */
+  private static final Pattern SRC = Pattern.compile(
+      "src=\"images/([^\"/]+\\.(?:jpg|jpeg))\"(?: srcset=\"[^\"]*\" sizes=\"[^\"]*\")?");
+  /** An image file a page refers to. */
+  private static final Pattern REFERENCE = Pattern.compile("images/([^\"/ ]+\\.jpg)");
+  /** A copy of an image, named after the image and one of WIDTHS. */
+  private static final Pattern VARIANT = Pattern.compile("(.+)-(" + joinWidths() + ")\\.jpg");
+
+  private ImageVariantGenerator() {}
+
+  public static void main(String[] args) throws IOException {
+    File imagesDir = new File(args[0]);
+    List<File> pages = new ArrayList<>();
+    for (int i = 1; i < args.length; i++) {
+      pages.add(new File(args[i]));
+    }
+
+    Set<String> referenced = new TreeSet<>();
+    for (File page : pages) {
+      addSrcsets(imagesDir, page);
+      Matcher reference = REFERENCE.matcher(new String(Files.readAllBytes(page.toPath()), StandardCharsets.UTF_8));
+      while (reference.find()) {
+        referenced.add(reference.group(1));
+      }
+    }
+
+    for (String name : referenced) {
+      File source = getSource(imagesDir, name);
+      if (source != null) {
+        Matcher variant = VARIANT.matcher(name);
+        variant.matches();
+        int width = Integer.parseInt(variant.group(2));
+        writeJpeg(resize(ImageIO.read(source), width), new File(imagesDir, name));
+        System.out.println("Wrote " + name);
+      }
+    }
+    for (File file : imagesDir.listFiles()) {
+      if (!referenced.contains(file.getName()) && getSource(imagesDir, file.getName()) != null) {
+        Files.delete(file.toPath());
+        System.out.println("Deleted " + file.getName());
+      }
+    }
+  }
+
+  /** Give every img tag of a page the srcset of its image's copies. */
+  private static void addSrcsets(File imagesDir, File page) throws IOException {
+    String html = new String(Files.readAllBytes(page.toPath()), StandardCharsets.UTF_8);
+    Matcher src = SRC.matcher(html);
+    StringBuffer rewritten = new StringBuffer();
+    while (src.find()) {
+      String name = src.group(1);
+      BufferedImage image = ImageIO.read(new File(imagesDir, name));
+      String base = name.substring(0, name.lastIndexOf('.'));
+
+      StringBuilder srcset = new StringBuilder();
+      for (int width : WIDTHS) {
+        if (width >= image.getWidth()) {
+          break;
+        }
+        srcset.append("images/").append(base).append('-').append(width).append(".jpg ")
+            .append(width).append("w, ");
+      }
+      srcset.append("images/").append(name).append(' ').append(image.getWidth()).append('w');
+      src.appendReplacement(rewritten, Matcher.quoteReplacement("src=\"images/" + name
+          + "\" srcset=\"" + srcset + "\" sizes=\"" + SIZES + "\""));
+    }
+    src.appendTail(rewritten);
+    Files.write(page.toPath(), rewritten.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the image a copy is made from, or null if the name is not that of a copy. A file
+   * such as foo-2020.jpg is an image of its own, since 2020 is not one of WIDTHS.
+   */
+  private static File getSource(File imagesDir, String name) {
+    Matcher variant = VARIANT.matcher(name);
+    if (!variant.matches()) {
+      return null;
+    }
+    for (String extension : new String[] {".jpg", ".jpeg"}) {
+      File source = new File(imagesDir, variant.group(1) + extension);
+      if (source.isFile()) {
+        return source;
+      }
+    }
+    return null;
+  }
+
+  private static String joinWidths() {
+    StringBuilder widths = new StringBuilder();
+    for (int width : WIDTHS) {
+      widths.append(widths.length() == 0 ? "" : "|").append(width);
+    }
+    return widths.toString();
+  }
+
+  /** Scale an image down to a width, halving it first while it is more than twice as wide. */
+  private static BufferedImage resize(BufferedImage image, int width) {
+    BufferedImage current = image;
+    while (current.getWidth() / 2 >= width) {
+      current = scale(current, current.getWidth() / 2);
+    }
+    return scale(current, width);
+  }
+
+  private static BufferedImage scale(BufferedImage image, int width) {
+    int height = Math.max(1, Math.round((float) image.getHeight() * width / image.getWidth()));
+    BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = scaled.createGraphics();
+    graphics.setRenderingHint(
+        RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+    graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+    graphics.drawImage(image, 0, 0, width, height, null);
+    graphics.dispose();
+    return scaled;
+  }
+
+  /** Write a progressive JPEG with no metadata beyond the JFIF header. */
+  private static void writeJpeg(BufferedImage image, File file) throws IOException {
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    param.setCompressionQuality(QUALITY);
+    param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+    try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+      writer.setOutput(out);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+  }
+}
@@ -14,6 +14,8 @@
 
 package com.google.sps.data;
 
+import com.google.appengine.api.datastore.Entity;
+
 /**
  * Class representing a comment that the users create.
  *
@@ -47,6 +49,25 @@ public class Comment {
     this.sentimentScore = score;
     this.timestamp = timestamp;
   }
+
+  /**
+   * Create a comment from a published comment entity in the datastore. Entities from a
+   * projection query may be missing properties, which are left as null or 0.
+   *
+   * @param entity The "Comment" entity.
+   * @return the Comment holding the entity's properties.
+   */
+  public static Comment fromEntity(Entity entity) {
+    long id = entity.getKey().getId();
+    String name = (String) entity.getProperty("name");
+    String email = (String) entity.getProperty("email");
+    String message = (String) entity.getProperty("message");
+    // Scores read back from the datastore are doubles, scores set on a new entity are floats.
+    Number score = (Number) entity.getProperty("score");
+    Long timestamp = (Long) entity.getProperty("timestamp");
+    return new Comment(id, name, email, message,
+        score == null ? 0f : score.floatValue(), timestamp == null ? 0L : timestamp);
+  }
   
   public long getId() {
     return this.id;
@@ -61,7 +82,7 @@ public class Comment {
   }
 
   public String getMessage() {
-    return this.email;
+    return this.message;
   }
  
   public float getSentimentScore() {
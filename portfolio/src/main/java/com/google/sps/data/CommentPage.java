@@ -0,0 +1,45 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.List;
+
+/**
+ * Class representing one page of comments returned to the client.
+ *
+ * <p>Note: The private variables in this class are converted into JSON. The next page token
+ * is left out of the JSON when there are no more comments to fetch.
+ */
+public class CommentPage {
+
+  /** The comments on this page. */
+  private List<Comment> comments;
+
+  /** The opaque token the client sends back to get the next page, or null if this is the last page. */
+  private String nextPageToken;
+
+  public CommentPage(List<Comment> comments, String nextPageToken) {
+    this.comments = comments;
+    this.nextPageToken = nextPageToken;
+  }
+
+  public List<Comment> getComments() {
+    return this.comments;
+  }
+
+  public String getNextPageToken() {
+    return this.nextPageToken;
+  }
+}
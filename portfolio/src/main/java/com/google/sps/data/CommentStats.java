@@ -0,0 +1,58 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/**
+ * Class representing the aggregate statistics of the published comments.
+ *
+ * <p>Note: The private variables in this class are converted into JSON.
+ */
+public class CommentStats {
+
+  /** The number of published comments. */
+  private long count;
+
+  /** The mean sentiment score of the published comments, or 0 if there are none. */
+  private double meanScore;
+
+  /** The lower bound of each histogram bucket, followed by the upper bound of the last one. */
+  private float[] bucketBounds;
+
+  /** The number of comments with a score in each bucket. */
+  private long[] histogram;
+
+  public CommentStats(long count, double meanScore, float[] bucketBounds, long[] histogram) {
+    this.count = count;
+    this.meanScore = meanScore;
+    this.bucketBounds = bucketBounds;
+    this.histogram = histogram;
+  }
+
+  public long getCount() {
+    return this.count;
+  }
+
+  public double getMeanScore() {
+    return this.meanScore;
+  }
+
+  public float[] getBucketBounds() {
+    return this.bucketBounds;
+  }
+
+  public long[] getHistogram() {
+    return this.histogram;
+  }
+}
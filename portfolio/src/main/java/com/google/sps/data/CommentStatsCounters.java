@@ -0,0 +1,225 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Running totals of the published comments kept in sharded counter entities, so statistics
+ * can be read with one batch get instead of a scan over every comment.
+ *
+ * <p>Each "CommentStatsShard" entity holds a count, a sum of scores and a histogram of scores
+ * over -1 to 1. A write updates one random shard in a transaction, which spreads concurrent
+ * writes across NUM_SHARDS entity groups. A read gets every shard and adds them up.
+ *
+ * <p>The comments published before the counters started are counted once, by the first read,
+ * with a projection query on their scores into a "backfill" entity that is summed like a
+ * shard. Writes are not recorded until the backfill exists, since the backfill counts them.
+ * A backfill is thrown away and retried if the comments version moved while it was counting,
+ * since comments published meanwhile might be counted twice or not at all.
+ */
+public final class CommentStatsCounters {
+  public static final int NUM_BUCKETS = 10;
+
+  private static final int NUM_SHARDS = 20;
+  private static final int MAX_ATTEMPTS = 5;
+  private static final float MIN_SCORE = -1f;
+  private static final float MAX_SCORE = 1f;
+  private static final DatastoreService DATASTORE = DatastoreServiceFactory.getDatastoreService();
+  private static final Key BACKFILL_KEY = KeyFactory.createKey("CommentStatsShard", "backfill");
+
+  private CommentStatsCounters() {}
+
+  /**
+   * Add newly published comments to the totals.
+   *
+   * @param scores The sentiment scores of the comments.
+   */
+  public static void record(List<Float> scores) {
+    if (scores.isEmpty()) {
+      return;
+    }
+
+    // Each attempt picks a new shard, so a collision is unlikely to happen twice.
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+      Key key = getShardKey(ThreadLocalRandom.current().nextInt(NUM_SHARDS));
+      Transaction transaction = DATASTORE.beginTransaction(TransactionOptions.Builder.withXG(true));
+      try {
+        // Reading the backfill in the transaction makes a backfill committed meanwhile retry it.
+        try {
+          DATASTORE.get(transaction, BACKFILL_KEY);
+        } catch (EntityNotFoundException e) {
+          return;
+        }
+
+        Entity shard;
+        try {
+          shard = DATASTORE.get(transaction, key);
+        } catch (EntityNotFoundException e) {
+          shard = new Entity(key);
+        }
+        addScores(shard, scores);
+        DATASTORE.put(transaction, shard);
+        transaction.commit();
+        return;
+      } catch (ConcurrentModificationException e) {
+        // Another write updated the same shard first, so try again.
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+    System.err.println("Could not record statistics for " + scores.size() + " comments.");
+  }
+
+  /** Returns the totals of every shard added together. */
+  public static CommentStats read() {
+    Map<Key, Entity> shards = DATASTORE.get(getCounterKeys());
+    if (!shards.containsKey(BACKFILL_KEY)) {
+      shards = backfill();
+    }
+
+    long count = 0;
+    double scoreSum = 0;
+    long[] histogram = new long[NUM_BUCKETS];
+    for (Entity shard : shards.values()) {
+      count += getLong(shard, "count");
+      scoreSum += getDouble(shard, "scoreSum");
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        histogram[i] += getLong(shard, "bucket" + i);
+      }
+    }
+
+    float[] bucketBounds = new float[NUM_BUCKETS + 1];
+    for (int i = 0; i <= NUM_BUCKETS; i++) {
+      bucketBounds[i] = (float) (MIN_SCORE + (double) (MAX_SCORE - MIN_SCORE) * i / NUM_BUCKETS);
+    }
+    return new CommentStats(count, count == 0 ? 0 : scoreSum / count, bucketBounds, histogram);
+  }
+
+  /** Set the totals back to zero after every comment was deleted. */
+  public static void reset() {
+    DATASTORE.delete(getCounterKeys());
+  }
+
+  /**
+   * Count the published comments into the backfill, unless another read got there first.
+   * Shards written before there was a backfill are dropped, since the backfill counts them.
+   *
+   * @return the shards and backfill that exist afterwards.
+   */
+  private static Map<Key, Entity> backfill() {
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+      long version = CommentsVersion.get();
+      Query query =
+          new Query("Comment").addProjection(new PropertyProjection("score", Double.class));
+      List<Float> scores = new ArrayList<>();
+      for (Entity entity : DATASTORE.prepare(query).asIterable()) {
+        scores.add(((Number) entity.getProperty("score")).floatValue());
+      }
+
+      Transaction transaction = DATASTORE.beginTransaction(TransactionOptions.Builder.withXG(true));
+      try {
+        DATASTORE.get(transaction, BACKFILL_KEY);
+        return DATASTORE.get(getCounterKeys());
+      } catch (EntityNotFoundException e) {
+        if (CommentsVersion.get() != version) {
+          continue;
+        }
+        Entity backfill = new Entity(BACKFILL_KEY);
+        addScores(backfill, scores);
+        DATASTORE.delete(transaction, getShardKeys());
+        DATASTORE.put(transaction, backfill);
+        transaction.commit();
+        return DATASTORE.get(getCounterKeys());
+      } catch (ConcurrentModificationException e) {
+        // Another read or a write got there first, so look again.
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+    System.err.println("Could not count the published comments for their statistics.");
+    return DATASTORE.get(getCounterKeys());
+  }
+
+  /** Add the count, sum and histogram buckets of the given scores to a shard. */
+  private static void addScores(Entity shard, List<Float> scores) {
+    long[] buckets = new long[NUM_BUCKETS];
+    double scoreSum = 0;
+    for (float score : scores) {
+      buckets[getBucket(score)]++;
+      scoreSum += score;
+    }
+
+    shard.setUnindexedProperty("count", getLong(shard, "count") + scores.size());
+    shard.setUnindexedProperty("scoreSum", getDouble(shard, "scoreSum") + scoreSum);
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      String property = "bucket" + i;
+      shard.setUnindexedProperty(property, getLong(shard, property) + buckets[i]);
+    }
+  }
+
+  /** Returns the histogram bucket of a score, with scores outside -1 to 1 in the end buckets. */
+  private static int getBucket(float score) {
+    int bucket = (int) ((score - MIN_SCORE) / (MAX_SCORE - MIN_SCORE) * NUM_BUCKETS);
+    return Math.max(0, Math.min(NUM_BUCKETS - 1, bucket));
+  }
+
+  private static List<Key> getShardKeys() {
+    List<Key> keys = new ArrayList<>();
+    for (int i = 0; i < NUM_SHARDS; i++) {
+      keys.add(getShardKey(i));
+    }
+    return keys;
+  }
+
+  /** Returns the keys of every shard and the backfill, which fit in one cross group transaction. */
+  private static List<Key> getCounterKeys() {
+    List<Key> keys = getShardKeys();
+    keys.add(BACKFILL_KEY);
+    return keys;
+  }
+
+  private static Key getShardKey(int shard) {
+    return KeyFactory.createKey("CommentStatsShard", "shard-" + shard);
+  }
+
+  private static long getLong(Entity shard, String property) {
+    Number value = (Number) shard.getProperty(property);
+    return value == null ? 0 : value.longValue();
+  }
+
+  private static double getDouble(Entity shard, String property) {
+    Number value = (Number) shard.getProperty(property);
+    return value == null ? 0 : value.doubleValue();
+  }
+}
@@ -0,0 +1,198 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Query.SortDirection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory read model that keeps the top comments for every sort order the comments
+ * section supports, so most page loads can be answered without a datastore query.
+ *
+ * <p>Each view is loaded lazily from the datastore and stamped with the CommentsVersion it
+ * reflects. A view is only served at that version, so a write on any instance makes it
+ * reload, and comments published on this instance advance it in place when nothing else was
+ * written in between. The query that loads a view is eventually consistent, so views are
+ * also reloaded once they are older than MAX_AGE_MILLIS.
+ */
+public final class CommentViews {
+  /** The number of comments kept for each sort order. */
+  public static final int CAPACITY = 100;
+
+  private static final long MAX_AGE_MILLIS = 30 * 1000;
+  private static final CommentViews INSTANCE = new CommentViews();
+
+  /** The loaded views keyed by sort property and direction. */
+  private final Map<String, View> views = new HashMap<>();
+
+  private CommentViews() {}
+
+  public static CommentViews getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Get a range of comments from the view for the given sort order.
+   *
+   * @param sortBy The datastore property the comments are sorted by.
+   * @param direction The direction the comments are sorted in.
+   * @param version The current version of the published comments.
+   * @param offset The position of the first comment to return.
+   * @param count The maximum number of comments to return.
+   * @return the comments in the range, or null if the view is not loaded, is stale or
+   * does not hold the whole range.
+   */
+  public synchronized List<Comment> getPage(
+      String sortBy, SortDirection direction, long version, int offset, int count) {
+    if (offset < 0) {
+      throw new IllegalArgumentException("Offset cannot be negative: " + offset);
+    }
+
+    View view = views.get(getViewKey(sortBy, direction));
+    if (view == null || view.version != version
+        || System.currentTimeMillis() - view.loadedAt > MAX_AGE_MILLIS) {
+      return null;
+    }
+    if (offset + count > view.comments.size() && !view.complete) {
+      return null;
+    }
+
+    int start = Math.min(offset, view.comments.size());
+    int end = Math.min(offset + count, view.comments.size());
+    return new ArrayList<>(view.comments.subList(start, end));
+  }
+
+  /**
+   * Replace the view for the given sort order with the top comments read from the datastore.
+   *
+   * @param sortBy The datastore property the comments are sorted by.
+   * @param direction The direction the comments are sorted in.
+   * @param version The version of the published comments read before the datastore query.
+   * @param comments The first comments in this sort order. If there are more than CAPACITY
+   * comments then the view is marked as incomplete and the extra comments are dropped.
+   */
+  public synchronized void load(
+      String sortBy, SortDirection direction, long version, List<Comment> comments) {
+    // A slower request must not replace a view that has since moved to a newer version.
+    String key = getViewKey(sortBy, direction);
+    View current = views.get(key);
+    if (current != null && current.version > version) {
+      return;
+    }
+
+    View view = new View(makeComparator(sortBy, direction), version);
+    view.complete = comments.size() <= CAPACITY;
+    view.comments.addAll(comments.subList(0, Math.min(comments.size(), CAPACITY)));
+    views.put(key, view);
+  }
+
+  /**
+   * Add newly published comments to every loaded view that was at the version before they
+   * were published, and drop the views that missed a write from somewhere else.
+   *
+   * @param comments The comments that were written to the datastore.
+   * @param change The move of the version made after the comments were written, or null if
+   * the version could not be moved forward.
+   */
+  public synchronized void add(List<Comment> comments, CommentsVersion.Change change) {
+    Iterator<View> iterator = views.values().iterator();
+    while (iterator.hasNext()) {
+      View view = iterator.next();
+      if (change == null || view.version != change.getPrevious()) {
+        iterator.remove();
+        continue;
+      }
+
+      for (Comment comment : comments) {
+        insert(view, comment);
+      }
+      view.version = change.getCurrent();
+    }
+  }
+
+  private static void insert(View view, Comment comment) {
+    int index = Collections.binarySearch(view.comments, comment, view.order);
+    if (index >= 0) {
+      return;
+    }
+    index = -(index + 1);
+
+    // A comment that sorts past the end of an incomplete view is not in the top comments.
+    if (index == view.comments.size() && !view.complete) {
+      return;
+    }
+
+    view.comments.add(index, comment);
+    if (view.comments.size() > CAPACITY) {
+      view.comments.remove(view.comments.size() - 1);
+      view.complete = false;
+    }
+  }
+
+  /** Drop every view so that they are reloaded from the datastore on the next read. */
+  public synchronized void invalidate() {
+    views.clear();
+  }
+
+  private static String getViewKey(String sortBy, SortDirection direction) {
+    return sortBy + " " + direction;
+  }
+
+  /**
+   * Make a comparator that orders comments the same way the datastore does: by the sort
+   * property in the given direction with ties broken by ascending id.
+   */
+  private static Comparator<Comment> makeComparator(String sortBy, SortDirection direction) {
+    Comparator<Comment> order;
+    if (sortBy.equals("name")) {
+      order = Comparator.comparing(Comment::getName, Comparator.nullsFirst(Comparator.naturalOrder()));
+    } else if (sortBy.equals("email")) {
+      order = Comparator.comparing(Comment::getEmail, Comparator.nullsFirst(Comparator.naturalOrder()));
+    } else if (sortBy.equals("score")) {
+      order = Comparator.comparing(Comment::getSentimentScore);
+    } else {
+      order = Comparator.comparing(Comment::getTimestamp);
+    }
+
+    if (direction == SortDirection.DESCENDING) {
+      order = order.reversed();
+    }
+    return order.thenComparing(Comment::getId);
+  }
+
+  /** The top comments for one sort order. */
+  private static final class View {
+    private final Comparator<Comment> order;
+    private final List<Comment> comments = new ArrayList<>();
+    private final long loadedAt = System.currentTimeMillis();
+
+    /** The version of the published comments the view reflects. */
+    private long version;
+
+    /** Whether the view holds every comment rather than just the top CAPACITY comments. */
+    private boolean complete;
+
+    private View(Comparator<Comment> order, long version) {
+      this.order = order;
+      this.version = version;
+    }
+  }
+}
@@ -0,0 +1,50 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/**
+ * Class representing everything the comments section needs to render when the page loads.
+ *
+ * <p>Note: The private variables in this class are converted into JSON.
+ */
+public class CommentsBootstrap {
+
+  /** Whether the user is logged in and the url to log in or out. */
+  private UserStatus user;
+
+  /** The first page of comments in the default order. */
+  private CommentPage page;
+
+  /** The number of published comments. */
+  private long totalComments;
+
+  public CommentsBootstrap(UserStatus user, CommentPage page, long totalComments) {
+    this.user = user;
+    this.page = page;
+    this.totalComments = totalComments;
+  }
+
+  public UserStatus getUser() {
+    return this.user;
+  }
+
+  public CommentPage getPage() {
+    return this.page;
+  }
+
+  public long getTotalComments() {
+    return this.totalComments;
+  }
+}
@@ -0,0 +1,93 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.IdentifiableValue;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+
+/**
+ * The version of the published comments, shared by every instance through memcache.
+ *
+ * <p>The version is the time in milliseconds of the last write that changed the published
+ * comments, bumped by one if two writes land in the same millisecond, so it can be used both
+ * as an entity tag and as the last modified time. If memcache evicts the version it starts
+ * again from the current time, which only means clients download the comments once more.
+ */
+public final class CommentsVersion {
+  private static final MemcacheService MEMCACHE = MemcacheServiceFactory.getMemcacheService();
+  private static final String VERSION_KEY = "comments-version";
+  private static final int MAX_BUMP_ATTEMPTS = 10;
+
+  private CommentsVersion() {}
+
+  /** Returns the current version of the published comments. */
+  public static long get() {
+    Long version = (Long) MEMCACHE.get(VERSION_KEY);
+    if (version != null) {
+      return version;
+    }
+
+    // Only one instance gets to start the version, the others read the one it stored.
+    MEMCACHE.put(VERSION_KEY, System.currentTimeMillis(), null, SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+    return (Long) MEMCACHE.get(VERSION_KEY);
+  }
+
+  /**
+   * Move the version forward after the published comments have changed.
+   *
+   * @return the move from the old version to the new one, or null if there was no version to
+   * move forward from.
+   */
+  public static Change bump() {
+    for (int attempt = 0; attempt < MAX_BUMP_ATTEMPTS; attempt++) {
+      IdentifiableValue current = MEMCACHE.getIdentifiable(VERSION_KEY);
+      if (current == null) {
+        MEMCACHE.put(VERSION_KEY, System.currentTimeMillis());
+        return null;
+      }
+
+      long previous = (Long) current.getValue();
+      long version = Math.max(System.currentTimeMillis(), previous + 1);
+      if (MEMCACHE.putIfUntouched(VERSION_KEY, current, version)) {
+        return new Change(previous, version);
+      }
+    }
+
+    // Writes keep racing with ours, so drop the version and let the next read start a new one.
+    MEMCACHE.delete(VERSION_KEY);
+    return null;
+  }
+
+  /** One move of the version, so callers can tell whether they saw every write in between. */
+  public static final class Change {
+    private final long previous;
+    private final long current;
+
+    Change(long previous, long current) {
+      this.previous = previous;
+      this.current = current;
+    }
+
+    public long getPrevious() {
+      return previous;
+    }
+
+    public long getCurrent() {
+      return current;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/**
+ * Class representing how far a bulk delete of comments got before the request ended.
+ *
+ * <p>Note: The private variables in this class are converted into JSON. The resume token is
+ * left out of the JSON once every comment has been deleted.
+ */
+public class DeleteProgress {
+
+  /** The number of entities deleted by this request. */
+  private long deleted;
+
+  /** Whether every comment has been deleted. */
+  private boolean done;
+
+  /** The opaque token the client sends back to continue deleting, or null if done. */
+  private String resumeToken;
+
+  public DeleteProgress(long deleted, boolean done, String resumeToken) {
+    this.deleted = deleted;
+    this.done = done;
+    this.resumeToken = resumeToken;
+  }
+
+  public long getDeleted() {
+    return this.deleted;
+  }
+
+  public boolean isDone() {
+    return this.done;
+  }
+
+  public String getResumeToken() {
+    return this.resumeToken;
+  }
+}
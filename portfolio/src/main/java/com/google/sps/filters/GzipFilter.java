@@ -0,0 +1,336 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.filters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Filter that gzips responses for clients that accept it.
+ *
+ * <p>The first THRESHOLD bytes of a response are buffered. Responses that end before that are
+ * sent as they are, since compressing them saves almost nothing. Larger responses are
+ * compressed as they are written. Deflaters are kept in a pool and reset between responses
+ * so each response does not allocate new native compression buffers.
+ */
+public class GzipFilter implements Filter {
+  private int threshold;
+  private BlockingQueue<Deflater> deflaters;
+
+  @Override
+  public void init(FilterConfig config) {
+    threshold = Integer.parseInt(config.getInitParameter("threshold"));
+    deflaters = new ArrayBlockingQueue<>(Integer.parseInt(config.getInitParameter("pool-size")));
+  }
+
+  @Override
+  public void destroy() {
+    Deflater deflater;
+    while ((deflater = deflaters.poll()) != null) {
+      deflater.end();
+    }
+  }
+
+  @Override
+  public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse,
+      FilterChain chain) throws IOException, ServletException {
+    HttpServletRequest request = (HttpServletRequest) servletRequest;
+    HttpServletResponse response = (HttpServletResponse) servletResponse;
+    response.addHeader("Vary", "Accept-Encoding");
+    if (!acceptsGzip(request)) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    // Requests put into async mode with startAsync() are answered through the unwrapped
+    // response after the chain returns, so they are sent uncompressed.
+    GzipResponse gzipResponse = new GzipResponse(response);
+    try {
+      chain.doFilter(request, gzipResponse);
+    } finally {
+      gzipResponse.finish();
+    }
+  }
+
+  private static boolean acceptsGzip(HttpServletRequest request) {
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.trim().split(";");
+      if (parts[0].trim().equalsIgnoreCase("gzip")) {
+        return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+      }
+    }
+    return false;
+  }
+
+  private Deflater takeDeflater() {
+    Deflater deflater = deflaters.poll();
+    if (deflater == null) {
+      deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+    return deflater;
+  }
+
+  private void returnDeflater(Deflater deflater) {
+    deflater.reset();
+    if (!deflaters.offer(deflater)) {
+      deflater.end();
+    }
+  }
+
+  /** Response wrapper that decides whether to compress once the body passes the threshold. */
+  private final class GzipResponse extends HttpServletResponseWrapper {
+    private GzipOutputStream outputStream;
+    private PrintWriter writer;
+
+    private GzipResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (writer != null) {
+        throw new IllegalStateException("getWriter() has already been called.");
+      }
+      if (outputStream == null) {
+        outputStream = new GzipOutputStream((HttpServletResponse) getResponse());
+      }
+      return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (writer == null) {
+        if (outputStream != null) {
+          throw new IllegalStateException("getOutputStream() has already been called.");
+        }
+        outputStream = new GzipOutputStream((HttpServletResponse) getResponse());
+        writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+      }
+      return writer;
+    }
+
+    @Override
+    public void setContentLength(int length) {
+      // The length changes once the body is compressed.
+    }
+
+    @Override
+    public void setContentLengthLong(long length) {
+      // The length changes once the body is compressed.
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+      if (writer != null) {
+        writer.flush();
+      }
+      if (outputStream != null) {
+        outputStream.flush();
+      }
+      super.flushBuffer();
+    }
+
+    private void finish() throws IOException {
+      if (writer != null) {
+        writer.flush();
+      }
+      if (outputStream != null) {
+        outputStream.finish();
+      }
+    }
+  }
+
+  /** Output stream that buffers up to the threshold and then writes gzip to the response. */
+  private final class GzipOutputStream extends ServletOutputStream {
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private final HttpServletResponse response;
+    private final byte[] buffer = new byte[threshold];
+    private int buffered;
+
+    private OutputStream out;
+    private Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] deflated = new byte[8192];
+    private boolean finished;
+
+    private GzipOutputStream(HttpServletResponse response) {
+      this.response = response;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (finished) {
+        throw new IOException("Stream is closed.");
+      }
+      if (out == null) {
+        if (buffered + length <= buffer.length) {
+          System.arraycopy(bytes, offset, buffer, buffered, length);
+          buffered += length;
+          return;
+        }
+        start();
+      }
+      if (deflater == null) {
+        out.write(bytes, offset, length);
+        return;
+      }
+
+      crc.update(bytes, offset, length);
+      deflater.setInput(bytes, offset, length);
+      while (!deflater.needsInput()) {
+        drain(Deflater.NO_FLUSH);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (out == null) {
+        // Nothing has been committed yet, so keep buffering until the threshold decides.
+        return;
+      }
+      if (deflater != null) {
+        drain(Deflater.SYNC_FLUSH);
+      }
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      finish();
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener listener) {
+      throw new UnsupportedOperationException("Non-blocking writes are not compressed.");
+    }
+
+    /**
+     * Start writing to the response, compressing the body unless it was already encoded or
+     * is not going to shrink.
+     */
+    private void start() throws IOException {
+      boolean compress = !response.containsHeader("Content-Encoding") && isCompressible();
+      if (compress) {
+        response.setHeader("Content-Encoding", "gzip");
+        String etag = response.getHeader("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+          // The compressed bytes differ from the uncompressed ones, so the tag is only weak.
+          response.setHeader("ETag", "W/" + etag);
+        }
+      }
+      out = response.getOutputStream();
+
+      if (compress) {
+        deflater = takeDeflater();
+        out.write(new byte[] {
+            (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0});
+        if (buffered > 0) {
+          crc.update(buffer, 0, buffered);
+          deflater.setInput(buffer, 0, buffered);
+          while (!deflater.needsInput()) {
+            drain(Deflater.NO_FLUSH);
+          }
+        }
+      } else if (buffered > 0) {
+        out.write(buffer, 0, buffered);
+      }
+    }
+
+    private boolean isCompressible() {
+      String contentType = response.getContentType();
+      if (contentType == null) {
+        return false;
+      }
+      return contentType.startsWith("text/") || contentType.contains("json")
+          || contentType.contains("javascript") || contentType.contains("xml");
+    }
+
+    private void drain(int flushMode) throws IOException {
+      int length;
+      do {
+        length = deflater.deflate(deflated, 0, deflated.length, flushMode);
+        out.write(deflated, 0, length);
+      } while (length == deflated.length);
+    }
+
+    /** Write whatever is left, or the small buffered body as it is. */
+    private void finish() throws IOException {
+      if (finished) {
+        return;
+      }
+      finished = true;
+
+      if (out == null) {
+        // The whole body fit under the threshold, so it is sent uncompressed.
+        if (buffered > 0) {
+          response.setContentLength(buffered);
+          response.getOutputStream().write(buffer, 0, buffered);
+        }
+        return;
+      }
+      if (deflater == null) {
+        return;
+      }
+
+      try {
+        deflater.finish();
+        while (!deflater.finished()) {
+          int length = deflater.deflate(deflated);
+          out.write(deflated, 0, length);
+        }
+        long crcValue = crc.getValue();
+        long size = deflater.getBytesRead();
+        out.write(new byte[] {
+            (byte) crcValue, (byte) (crcValue >> 8), (byte) (crcValue >> 16), (byte) (crcValue >> 24),
+            (byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)});
+      } finally {
+        returnDeflater(deflater);
+        deflater = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,82 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.filters;
+
+import com.google.sps.metrics.Gauge;
+import com.google.sps.metrics.InstrumentedDelegate;
+import com.google.sps.metrics.Metrics;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRegistration;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Filter that records the latency, errors and number in flight of requests to each servlet,
+ * and starts timing App Engine API calls.
+ *
+ * <p>Requests are labelled with the servlet path they were mapped to. Everything else, such
+ * as static files, is labelled "other" so the number of series stays bounded. Async requests
+ * are only timed until the servlet returns. It is mapped first in web.xml, so the latency
+ * includes the time spent in the other filters.
+ */
+public class MetricsFilter implements Filter {
+  private static final String OTHER = "other";
+
+  private final Set<String> servletPaths = new HashSet<>();
+
+  @Override
+  public void init(FilterConfig config) {
+    for (ServletRegistration registration :
+        config.getServletContext().getServletRegistrations().values()) {
+      servletPaths.addAll(registration.getMappings());
+    }
+    InstrumentedDelegate.install();
+  }
+
+  @Override
+  public void destroy() {}
+
+  @Override
+  public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse,
+      FilterChain chain) throws IOException, ServletException {
+    HttpServletRequest request = (HttpServletRequest) servletRequest;
+    HttpServletResponse response = (HttpServletResponse) servletResponse;
+    String servlet = servletPaths.contains(request.getServletPath())
+        ? request.getServletPath() : OTHER;
+
+    Gauge inFlight = Metrics.HTTP_REQUESTS_IN_FLIGHT.labels("");
+    inFlight.increment();
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      chain.doFilter(request, response);
+      failed = response.getStatus() >= 500;
+    } finally {
+      Metrics.HTTP_REQUEST_DURATION.labels(servlet).record(System.nanoTime() - start);
+      if (failed) {
+        Metrics.HTTP_REQUEST_ERRORS.labels(servlet).increment();
+      }
+      inFlight.decrement();
+    }
+  }
+}
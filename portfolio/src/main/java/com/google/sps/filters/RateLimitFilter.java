@@ -0,0 +1,100 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.filters;
+
+import com.google.sps.ratelimit.TokenBucketLimiter;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Filter that limits how often each logged in user can call an endpoint, answering with 429
+ * Too Many Requests before the servlet does any work.
+ *
+ * <p>Limits are set per endpoint with system properties named "ratelimit." followed by the
+ * method and path, such as "ratelimit.POST./data", with a value like "5/60" meaning a burst of
+ * 5 requests with one more allowed every 60 / 5 seconds. Requests from users who are not
+ * logged in are not limited since the servlets turn them away without doing any work.
+ */
+public class RateLimitFilter implements Filter {
+  private static final String PROPERTY_PREFIX = "ratelimit.";
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+  private static final UserService USER = UserServiceFactory.getUserService();
+
+  /** The limiter of each endpoint, keyed by method and path. */
+  private final Map<String, TokenBucketLimiter> limiters = new HashMap<>();
+
+  @Override
+  public void init(FilterConfig config) throws ServletException {
+    for (String name : System.getProperties().stringPropertyNames()) {
+      if (name.startsWith(PROPERTY_PREFIX)) {
+        String endpoint = name.substring(PROPERTY_PREFIX.length());
+        limiters.put(endpoint, parseLimit(name, System.getProperty(name)));
+      }
+    }
+  }
+
+  @Override
+  public void destroy() {}
+
+  @Override
+  public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse,
+      FilterChain chain) throws IOException, ServletException {
+    HttpServletRequest request = (HttpServletRequest) servletRequest;
+    HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+    TokenBucketLimiter limiter = limiters.get(request.getMethod() + "." + request.getServletPath());
+    if (limiter != null && USER.isUserLoggedIn()) {
+      long waitNanos = limiter.tryAcquire(USER.getCurrentUser().getEmail());
+      if (waitNanos > 0) {
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999999999));
+        response.setHeader("Retry-After", Long.toString(retryAfterSeconds));
+        response.sendError(SC_TOO_MANY_REQUESTS, "Too many requests, try again later.");
+        return;
+      }
+    }
+    chain.doFilter(request, response);
+  }
+
+  /**
+   * Parse a limit such as "5/60", meaning 5 requests every 60 seconds.
+   *
+   * @param name The name of the system property, used in the error message.
+   * @param value The value of the system property.
+   * @return a limiter for the endpoint.
+   * @throws ServletException if the value is not a valid limit.
+   */
+  private static TokenBucketLimiter parseLimit(String name, String value) throws ServletException {
+    try {
+      String[] parts = value.split("/");
+      long requests = Long.parseLong(parts[0].trim());
+      long seconds = Long.parseLong(parts[1].trim());
+      return new TokenBucketLimiter(requests, TimeUnit.SECONDS.toNanos(seconds) / requests);
+    } catch (RuntimeException e) {
+      throw new ServletException("Invalid rate limit for " + name + ": " + value, e);
+    }
+  }
+}
@@ -0,0 +1,181 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.live;
+
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentUpdates;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
+/**
+ * Answers long polls for newly published comments.
+ *
+ * <p>App Engine only sends a response once it is complete, so comments cannot be streamed.
+ * Instead a poll is held open until a comment is published on this instance or MAX_WAIT_MILLIS
+ * passes, whichever comes first, and the client polls again as soon as it has the answer.
+ * Comments published on other instances are found by the query each poll starts with.
+ *
+ * <p>Comments are stamped when they are published, before their transaction commits and with
+ * the clock of the instance that published them. So a comment can turn up with a publish time
+ * before the one the client already has comments up to, and the query reaches back
+ * CATCH_UP_MARGIN_MILLIS. The client sends the ids of the comments it got within that margin,
+ * which the query skips.
+ *
+ * <p>A held poll is an async request, so it does not hold a thread while it waits. It is
+ * answered by the thread that publishes the comments, or by a single timer thread once it has
+ * waited long enough.
+ */
+public final class CommentFeed {
+  /** How far before the client's publish time each poll looks for comments it has not got. */
+  public static final long CATCH_UP_MARGIN_MILLIS = 60 * 1000;
+  private static final long MAX_WAIT_MILLIS = 50 * 1000;
+  /** The container ends the poll after this, well inside the 60 second request deadline. */
+  private static final long TIMEOUT_MILLIS = 55 * 1000;
+  private static final Gson GSON = new Gson();
+  private static final CommentFeed INSTANCE = new CommentFeed();
+
+  private final Set<Poll> polls = ConcurrentHashMap.newKeySet();
+  private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+      runnable -> {
+        Thread thread = new Thread(runnable, "comment-feed-timer");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private CommentFeed() {
+    // Polls answered early cancel their expiry, which should not linger in the queue.
+    timer.setRemoveOnCancelPolicy(true);
+  }
+
+  public static CommentFeed getInstance() {
+    return INSTANCE;
+  }
+
+  /** Returns the number of polls waiting for comments. */
+  public int getWaitingCount() {
+    return polls.size();
+  }
+
+  /**
+   * Answer every waiting poll with newly published comments.
+   *
+   * @param comments The comments that were published.
+   * @param publishedAt The latest publish time of the comments.
+   */
+  public void publish(List<Comment> comments, long publishedAt) {
+    if (comments.isEmpty()) {
+      return;
+    }
+    for (Poll poll : polls) {
+      poll.answer(comments, publishedAt);
+    }
+  }
+
+  /**
+   * Hold a poll until comments are published or it has waited MAX_WAIT_MILLIS. The poll is
+   * held before the caller looks for comments it missed, so none are published in between.
+   *
+   * @param context The async context of the client's request.
+   * @param since The publish time the client already has comments up to.
+   * @return the poll, which the caller answers if it finds comments published since then.
+   */
+  public Poll hold(AsyncContext context, long since) {
+    context.setTimeout(TIMEOUT_MILLIS);
+    Poll poll = new Poll(context, since);
+    context.addListener(poll);
+    polls.add(poll);
+    poll.expiry = timer.schedule(
+        () -> poll.answer(Collections.emptyList(), since), MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+    return poll;
+  }
+
+  /** One client's request for comments, answered at most once. */
+  public final class Poll implements AsyncListener {
+    private final AsyncContext context;
+    private final long since;
+    private boolean answered;
+    private volatile ScheduledFuture<?> expiry;
+
+    private Poll(AsyncContext context, long since) {
+      this.context = context;
+      this.since = since;
+    }
+
+    /**
+     * Write the comments and end the request, unless it was already answered.
+     *
+     * @param comments The comments published since the poll's publish time.
+     * @param publishedAt The latest publish time of the comments.
+     */
+    public void answer(List<Comment> comments, long publishedAt) {
+      synchronized (this) {
+        if (answered) {
+          return;
+        }
+        answered = true;
+      }
+      finish();
+
+      try {
+        context.getResponse().getWriter().print(
+            GSON.toJson(new CommentUpdates(comments, Math.max(since, publishedAt))));
+        context.complete();
+      } catch (IOException | IllegalStateException e) {
+        // The client went away or the request already ended.
+      }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      answer(Collections.emptyList(), since);
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      synchronized (this) {
+        answered = true;
+      }
+      finish();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      finish();
+    }
+
+    /** Stop waiting, so neither the feed nor the timer keeps the poll. */
+    private void finish() {
+      polls.remove(this);
+      ScheduledFuture<?> scheduled = expiry;
+      if (scheduled != null) {
+        scheduled.cancel(false);
+      }
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {}
+  }
+}
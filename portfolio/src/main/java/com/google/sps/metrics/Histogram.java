@@ -0,0 +1,64 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with fixed bucket bounds from 100 microseconds to 60 seconds in 1-2-5
+ * steps. Recording a value is a search over a fixed array and two atomic adds, so it does
+ * not allocate.
+ */
+public final class Histogram {
+  /** The upper bound of each bucket in nanoseconds. Larger values go in an overflow bucket. */
+  static final long[] BOUNDS_NANOS = {
+    100_000L, 200_000L, 500_000L,
+    1_000_000L, 2_000_000L, 5_000_000L,
+    10_000_000L, 20_000_000L, 50_000_000L,
+    100_000_000L, 200_000_000L, 500_000_000L,
+    1_000_000_000L, 2_000_000_000L, 5_000_000_000L,
+    10_000_000_000L, 20_000_000_000L, 60_000_000_000L
+  };
+
+  private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_NANOS.length + 1);
+  private final AtomicLong sumNanos = new AtomicLong();
+
+  Histogram() {}
+
+  /**
+   * Record how long something took.
+   *
+   * @param nanos The time it took in nanoseconds.
+   */
+  public void record(long nanos) {
+    int bucket = Arrays.binarySearch(BOUNDS_NANOS, nanos);
+    if (bucket < 0) {
+      bucket = -(bucket + 1);
+    }
+    counts.incrementAndGet(bucket);
+    sumNanos.addAndGet(nanos);
+  }
+
+  /** Returns the number of values in a bucket, where the last bucket has no upper bound. */
+  long getCount(int bucket) {
+    return counts.get(bucket);
+  }
+
+  long getSumNanos() {
+    return sumNanos.get();
+  }
+}
@@ -0,0 +1,174 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import com.google.apphosting.api.ApiProxy;
+import com.google.apphosting.api.ApiProxy.ApiConfig;
+import com.google.apphosting.api.ApiProxy.Delegate;
+import com.google.apphosting.api.ApiProxy.Environment;
+import com.google.apphosting.api.ApiProxy.LogRecord;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * API proxy delegate that times every App Engine API call, such as each datastore RunQuery,
+ * Next, Get, Put and Delete and each memcache call, before passing it on.
+ *
+ * <p>Every App Engine service is reached through the API proxy, so wrapping its delegate
+ * covers all of them without touching the code that makes the calls.
+ */
+public final class InstrumentedDelegate implements Delegate<Environment> {
+  private final Delegate<Environment> delegate;
+
+  private InstrumentedDelegate(Delegate<Environment> delegate) {
+    this.delegate = delegate;
+  }
+
+  /** Wrap the current API proxy delegate unless it is already wrapped or not set yet. */
+  @SuppressWarnings("unchecked")
+  public static synchronized void install() {
+    Delegate<Environment> current = ApiProxy.getDelegate();
+    if (current != null && !(current instanceof InstrumentedDelegate)) {
+      ApiProxy.setDelegate(new InstrumentedDelegate(current));
+    }
+  }
+
+  @Override
+  public byte[] makeSyncCall(Environment environment, String service, String method,
+      byte[] request) {
+    Gauge inFlight = Metrics.DOWNSTREAM_CALLS_IN_FLIGHT.labels(service);
+    inFlight.increment();
+    long start = System.nanoTime();
+    try {
+      return delegate.makeSyncCall(environment, service, method, request);
+    } catch (RuntimeException e) {
+      Metrics.DOWNSTREAM_CALL_ERRORS.labels(service, method).increment();
+      throw e;
+    } finally {
+      Metrics.DOWNSTREAM_CALL_DURATION.labels(service, method).record(System.nanoTime() - start);
+      inFlight.decrement();
+    }
+  }
+
+  @Override
+  public Future<byte[]> makeAsyncCall(Environment environment, String service, String method,
+      byte[] request, ApiConfig apiConfig) {
+    Gauge inFlight = Metrics.DOWNSTREAM_CALLS_IN_FLIGHT.labels(service);
+    inFlight.increment();
+    long start = System.nanoTime();
+    try {
+      Future<byte[]> future =
+          delegate.makeAsyncCall(environment, service, method, request, apiConfig);
+      return new TimedFuture(future, service, method, start, inFlight);
+    } catch (RuntimeException e) {
+      Metrics.DOWNSTREAM_CALL_ERRORS.labels(service, method).increment();
+      inFlight.decrement();
+      throw e;
+    }
+  }
+
+  @Override
+  public void log(Environment environment, LogRecord record) {
+    delegate.log(environment, record);
+  }
+
+  @Override
+  public void flushLogs(Environment environment) {
+    delegate.flushLogs(environment);
+  }
+
+  @Override
+  public List<Thread> getRequestThreads(Environment environment) {
+    return delegate.getRequestThreads(environment);
+  }
+
+  /** Future that records the call the first time its result is seen. */
+  private static final class TimedFuture implements Future<byte[]> {
+    private final Future<byte[]> future;
+    private final String service;
+    private final String method;
+    private final long start;
+    private final Gauge inFlight;
+    private boolean recorded;
+
+    private TimedFuture(
+        Future<byte[]> future, String service, String method, long start, Gauge inFlight) {
+      this.future = future;
+      this.service = service;
+      this.method = method;
+      this.start = start;
+      this.inFlight = inFlight;
+    }
+
+    @Override
+    public byte[] get() throws InterruptedException, ExecutionException {
+      try {
+        byte[] response = future.get();
+        record(false);
+        return response;
+      } catch (ExecutionException | RuntimeException e) {
+        record(true);
+        throw e;
+      }
+    }
+
+    @Override
+    public byte[] get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      try {
+        byte[] response = future.get(timeout, unit);
+        record(false);
+        return response;
+      } catch (ExecutionException | RuntimeException e) {
+        record(true);
+        throw e;
+      }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = future.cancel(mayInterruptIfRunning);
+      if (cancelled) {
+        record(true);
+      }
+      return cancelled;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return future.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+      return future.isDone();
+    }
+
+    private synchronized void record(boolean failed) {
+      if (recorded) {
+        return;
+      }
+      recorded = true;
+      if (failed) {
+        Metrics.DOWNSTREAM_CALL_ERRORS.labels(service, method).increment();
+      }
+      Metrics.DOWNSTREAM_CALL_DURATION.labels(service, method).record(System.nanoTime() - start);
+      inFlight.decrement();
+    }
+  }
+}
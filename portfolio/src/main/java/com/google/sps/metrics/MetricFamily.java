@@ -0,0 +1,95 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * A named metric with one series for each combination of up to two label values.
+ *
+ * <p>Series are kept in nested maps keyed by each label value, so looking up an existing
+ * series does not allocate even when the label values are not known up front.
+ *
+ * @param <T> The type of each series: Histogram, Counter or Gauge.
+ */
+public final class MetricFamily<T> {
+  private final String name;
+  private final String help;
+  private final String type;
+  private final String[] labelNames;
+  private final Supplier<T> factory;
+  private final ConcurrentMap<String, ConcurrentMap<String, T>> series =
+      new ConcurrentHashMap<>();
+
+  MetricFamily(String name, String help, String type, Supplier<T> factory, String... labelNames) {
+    if (labelNames.length > 2) {
+      throw new IllegalArgumentException("A metric can have at most two labels: " + name);
+    }
+    this.name = name;
+    this.help = help;
+    this.type = type;
+    this.factory = factory;
+    this.labelNames = labelNames;
+  }
+
+  /**
+   * Get the series for a label value, creating it the first time.
+   *
+   * @param value The value of the first label, or "" if the metric has no labels.
+   */
+  public T labels(String value) {
+    return labels(value, "");
+  }
+
+  /**
+   * Get the series for two label values, creating it the first time.
+   *
+   * @param first The value of the first label.
+   * @param second The value of the second label.
+   */
+  public T labels(String first, String second) {
+    ConcurrentMap<String, T> inner = series.get(first);
+    if (inner == null) {
+      inner = series.computeIfAbsent(first, key -> new ConcurrentHashMap<>());
+    }
+    T metric = inner.get(second);
+    if (metric == null) {
+      metric = inner.computeIfAbsent(second, key -> factory.get());
+    }
+    return metric;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  String getHelp() {
+    return help;
+  }
+
+  String getType() {
+    return type;
+  }
+
+  String[] getLabelNames() {
+    return labelNames;
+  }
+
+  ConcurrentMap<String, ConcurrentMap<String, T>> getSeries() {
+    return series;
+  }
+}
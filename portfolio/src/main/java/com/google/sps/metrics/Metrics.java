@@ -0,0 +1,111 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The metrics recorded by the app and their Prometheus text format.
+ *
+ * <p>Callers look up a series once, or per call with label values they already have, and
+ * record into it. Recording only updates atomic values, so it does not allocate.
+ */
+public final class Metrics {
+  public static final MetricFamily<Histogram> HTTP_REQUEST_DURATION = new MetricFamily<>(
+      "http_request_duration_seconds", "Time spent handling requests by servlet.",
+      "histogram", Histogram::new, "servlet");
+  public static final MetricFamily<Counter> HTTP_REQUEST_ERRORS = new MetricFamily<>(
+      "http_request_errors_total", "Requests that threw or returned a 5xx status by servlet.",
+      "counter", Counter::new, "servlet");
+  public static final MetricFamily<Gauge> HTTP_REQUESTS_IN_FLIGHT = new MetricFamily<>(
+      "http_requests_in_flight", "Requests being handled.",
+      "gauge", Gauge::new);
+
+  public static final MetricFamily<Histogram> DOWNSTREAM_CALL_DURATION = new MetricFamily<>(
+      "downstream_call_duration_seconds", "Time spent in calls to other services.",
+      "histogram", Histogram::new, "service", "method");
+  public static final MetricFamily<Counter> DOWNSTREAM_CALL_ERRORS = new MetricFamily<>(
+      "downstream_call_errors_total", "Calls to other services that failed.",
+      "counter", Counter::new, "service", "method");
+  public static final MetricFamily<Gauge> DOWNSTREAM_CALLS_IN_FLIGHT = new MetricFamily<>(
+      "downstream_calls_in_flight", "Calls to other services waiting for an answer.",
+      "gauge", Gauge::new, "service");
+
+  private static final List<MetricFamily<?>> FAMILIES = Arrays.asList(
+      HTTP_REQUEST_DURATION, HTTP_REQUEST_ERRORS, HTTP_REQUESTS_IN_FLIGHT,
+      DOWNSTREAM_CALL_DURATION, DOWNSTREAM_CALL_ERRORS, DOWNSTREAM_CALLS_IN_FLIGHT);
+
+  private Metrics() {}
+
+  /**
+   * Write every metric in the Prometheus text exposition format.
+   *
+   * @param writer The writer for the response.
+   * @throws IOException if the response could not be written.
+   */
+  public static void writePrometheus(Writer writer) throws IOException {
+    for (MetricFamily<?> family : FAMILIES) {
+      writer.write("# HELP " + family.getName() + " " + family.getHelp() + "\n");
+      writer.write("# TYPE " + family.getName() + " " + family.getType() + "\n");
+      for (Map.Entry<String, ? extends Map<String, ?>> outer : family.getSeries().entrySet()) {
+        for (Map.Entry<String, ?> inner : outer.getValue().entrySet()) {
+          String labels = formatLabels(family.getLabelNames(), outer.getKey(), inner.getKey());
+          writeSeries(writer, family.getName(), labels, inner.getValue());
+        }
+      }
+    }
+  }
+
+  private static void writeSeries(Writer writer, String name, String labels, Object series)
+      throws IOException {
+    if (series instanceof Histogram) {
+      Histogram histogram = (Histogram) series;
+      String separator = labels.isEmpty() ? "" : labels + ",";
+      long cumulative = 0;
+      for (int i = 0; i <= Histogram.BOUNDS_NANOS.length; i++) {
+        cumulative += histogram.getCount(i);
+        String bound = i < Histogram.BOUNDS_NANOS.length
+            ? Double.toString(Histogram.BOUNDS_NANOS[i] / 1e9) : "+Inf";
+        writer.write(name + "_bucket{" + separator + "le=\"" + bound + "\"} " + cumulative + "\n");
+      }
+      String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+      writer.write(name + "_sum" + braces + " " + histogram.getSumNanos() / 1e9 + "\n");
+      writer.write(name + "_count" + braces + " " + cumulative + "\n");
+    } else {
+      long value = series instanceof Counter ? ((Counter) series).get() : ((Gauge) series).get();
+      writer.write(name + (labels.isEmpty() ? "" : "{" + labels + "}") + " " + value + "\n");
+    }
+  }
+
+  private static String formatLabels(String[] names, String first, String second) {
+    StringBuilder labels = new StringBuilder();
+    String[] values = {first, second};
+    for (int i = 0; i < names.length; i++) {
+      if (i > 0) {
+        labels.append(',');
+      }
+      labels.append(names[i]).append("=\"").append(escape(values[i])).append('"');
+    }
+    return labels.toString();
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -0,0 +1,239 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.moderation;
+
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentViews;
+import com.google.sps.data.CommentStatsCounters;
+import com.google.sps.data.CommentsVersion;
+import com.google.sps.live.CommentFeed;
+import com.google.sps.search.CommentIndex;
+import com.google.sps.sentiment.SentimentAnalyzer;
+import com.google.sps.sentiment.SentimentAnalyzers;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queue of comments waiting for moderation, backed by the "moderation" push task queue.
+ *
+ * <p>Comments are first stored as "PendingComment" entities so posting one only costs a
+ * single datastore put and adding a task. The task queue calls ModerationServlet with the
+ * keys of the pending comments, which are scored and either published as "Comment" entities
+ * or rejected. In both cases the pending entity is deleted. Tasks do not depend on the
+ * request that posted the comment, so moderation finishes even after that request ends.
+ *
+ * <p>A task fails if any of its comments could not be moderated, such as when the Natural
+ * Language API is unavailable, and the task queue retries it as set in queue.xml. Comments
+ * whose task could not be added or ran out of retries are queued again by a cron job once
+ * they have been pending for STALE_MILLIS. Claiming a comment is a transaction that checks
+ * the pending entity still exists, so a comment whose task runs twice, or on two instances
+ * at once, is still only published once.
+ */
+public final class ModerationQueue {
+  /** Comments with a sentiment score at or below this are rejected. */
+  public static final float MIN_SENTIMENT_SCORE = -0.3f;
+  /** The parameter of a moderation task holding the key of each pending comment. */
+  public static final String KEY_PARAMETER = "key";
+
+  private static final String QUEUE_NAME = "moderation";
+  private static final String TASK_URL = "/moderate";
+  private static final int BATCH_SIZE = 50;
+  /** How long a comment is pending before it is assumed its task will not moderate it. */
+  private static final long STALE_MILLIS = 10 * 60 * 1000;
+  private static final DatastoreService DATASTORE = DatastoreServiceFactory.getDatastoreService();
+
+  private static ModerationQueue instance;
+
+  /** The analyzer to use, or null to use the shared one. */
+  private final SentimentAnalyzer analyzer;
+
+  /** Use getInstance outside of tests. */
+  ModerationQueue(SentimentAnalyzer analyzer) {
+    this.analyzer = analyzer;
+  }
+
+  /** Get the moderation queue, which scores comments with the shared sentiment analyzer. */
+  public static synchronized ModerationQueue getInstance() {
+    if (instance == null) {
+      instance = new ModerationQueue(null);
+    }
+    return instance;
+  }
+
+  /**
+   * Add a task to moderate pending comments.
+   *
+   * @param keys The keys of the "PendingComment" entities.
+   */
+  public void submit(List<Key> keys) {
+    Queue queue = QueueFactory.getQueue(QUEUE_NAME);
+    for (int start = 0; start < keys.size(); start += BATCH_SIZE) {
+      TaskOptions task = TaskOptions.Builder.withUrl(TASK_URL);
+      for (Key key : keys.subList(start, Math.min(start + BATCH_SIZE, keys.size()))) {
+        task.param(KEY_PARAMETER, KeyFactory.keyToString(key));
+      }
+      queue.add(task);
+    }
+  }
+
+  /**
+   * Add tasks for comments that have been pending for longer than their task should take.
+   *
+   * @return the number of comments queued again.
+   */
+  public int submitStale() {
+    Query query = new Query("PendingComment")
+        .setFilter(new FilterPredicate("timestamp", FilterOperator.LESS_THAN,
+            System.currentTimeMillis() - STALE_MILLIS))
+        .setKeysOnly();
+    List<Key> keys = new ArrayList<>();
+    for (Entity entity : DATASTORE.prepare(query).asIterable(FetchOptions.Builder.withDefaults())) {
+      keys.add(entity.getKey());
+    }
+    submit(keys);
+    return keys.size();
+  }
+
+  /**
+   * Score a batch of pending comments, publish the ones that pass and delete the rest.
+   *
+   * <p>Each comment is published and its pending entity deleted in one transaction, which
+   * also checks the pending entity still exists. So a comment is never published twice, even
+   * if an earlier attempt committed but reported a failure.
+   *
+   * @param keys The keys of the "PendingComment" entities.
+   * @return the keys of the comments that could not be moderated.
+   */
+  public List<Key> moderate(List<Key> keys) {
+    Map<Key, Entity> pendingComments = DATASTORE.get(keys);
+
+    List<Entity> published = new ArrayList<>();
+    List<Key> failed = new ArrayList<>();
+    for (Entity pendingComment : pendingComments.values()) {
+      try {
+        float score = getSentimentScore((String) pendingComment.getProperty("message"));
+        Entity commentEntity = score > MIN_SENTIMENT_SCORE
+            ? createCommentEntity(pendingComment, score) : null;
+        if (commit(pendingComment.getKey(), commentEntity) && commentEntity != null) {
+          published.add(commentEntity);
+        }
+      } catch (IOException | RuntimeException e) {
+        System.err.println("This error occurred moderating comment " + pendingComment.getKey()
+            + ": " + e);
+        failed.add(pendingComment.getKey());
+      }
+    }
+
+    if (!published.isEmpty()) {
+      publish(published);
+    }
+    return failed;
+  }
+
+  /**
+   * Publish a comment and delete its pending entity in one transaction.
+   *
+   * @param pendingKey The key of the "PendingComment" entity.
+   * @param commentEntity The "Comment" entity to publish, or null if the comment was rejected.
+   * @return whether the pending comment still existed, so that this call moderated it.
+   */
+  private boolean commit(Key pendingKey, Entity commentEntity) {
+    Transaction transaction = DATASTORE.beginTransaction(TransactionOptions.Builder.withXG(true));
+    try {
+      try {
+        DATASTORE.get(transaction, pendingKey);
+      } catch (EntityNotFoundException e) {
+        return false;
+      }
+      if (commentEntity != null) {
+        DATASTORE.put(transaction, commentEntity);
+      }
+      DATASTORE.delete(transaction, pendingKey);
+      transaction.commit();
+      return true;
+    } finally {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+    }
+  }
+
+  /** Add newly published comments to the views, index, stats and live feed. */
+  private void publish(List<Entity> published) {
+    CommentViews views = CommentViews.getInstance();
+    CommentIndex index = CommentIndex.getInstance();
+    List<Comment> comments = new ArrayList<>();
+    List<Float> scores = new ArrayList<>();
+    long publishedAt = 0;
+    for (Entity commentEntity : published) {
+      Comment comment = Comment.fromEntity(commentEntity);
+      index.add(comment);
+      comments.add(comment);
+      scores.add(comment.getSentimentScore());
+      publishedAt = Math.max(publishedAt, (Long) commentEntity.getProperty("publishedAt"));
+    }
+    CommentStatsCounters.record(scores);
+    views.add(comments, CommentsVersion.bump());
+    CommentFeed.getInstance().publish(comments, publishedAt);
+  }
+
+  /**
+   * Create a published comment entity from a pending comment.
+   *
+   * @param pendingComment The "PendingComment" entity.
+   * @param score The sentiment score of the message.
+   * @return a "Comment" entity containing the comment information and its score.
+   */
+  private Entity createCommentEntity(Entity pendingComment, float score) {
+    Entity commentEntity = new Entity("Comment");
+    commentEntity.setProperty("name", pendingComment.getProperty("name"));
+    commentEntity.setProperty("email", pendingComment.getProperty("email"));
+    commentEntity.setProperty("message", pendingComment.getProperty("message"));
+    commentEntity.setProperty("score", score);
+    commentEntity.setProperty("timestamp", pendingComment.getProperty("timestamp"));
+    // The search index catches up with comments published on other instances by this time.
+    commentEntity.setProperty("publishedAt", System.currentTimeMillis());
+    return commentEntity;
+  }
+
+  /**
+   * Generate and return the sentiment score of the given message.
+   *
+   * @param message The comment the user made that will be analyzed.
+   * @return The sentiment score that was given to the comment.
+   * @throws IOException if the message could not be scored, so the comment is tried again.
+   */
+  private float getSentimentScore(String message) throws IOException {
+    SentimentAnalyzer scorer = analyzer != null ? analyzer : SentimentAnalyzers.getDefault();
+    return scorer.getSentimentScore(message);
+  }
+}
@@ -0,0 +1,139 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.moderation;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Writes "PendingComment" entities, optionally grouping concurrent writes into one put.
+ *
+ * <p>Write-behind mode is turned on with the "comments.write-behind" system property. The
+ * first request to write starts a batch and waits up to "comments.write-behind.linger-millis"
+ * for other requests to join it, or until "comments.write-behind.max-batch" comments are
+ * waiting. It then puts the whole batch at once. Every request blocks until the put that
+ * holds its comment finishes, so a request only redirects once its comment is stored.
+ *
+ * <p>The batch is written by the request that started it rather than a background thread,
+ * since App Engine APIs can only be called from request threads on most instances.
+ */
+public final class PendingCommentWriter {
+  private static final long DEFAULT_LINGER_MILLIS = 10;
+  private static final int DEFAULT_MAX_BATCH = 100;
+  private static final DatastoreService DATASTORE = DatastoreServiceFactory.getDatastoreService();
+
+  private static PendingCommentWriter instance;
+
+  private final boolean writeBehind;
+  private final long lingerMillis;
+  private final int maxBatch;
+
+  /** The batch waiting to be written, guarded by this. */
+  private Batch open;
+
+  private PendingCommentWriter(boolean writeBehind, long lingerMillis, int maxBatch) {
+    this.writeBehind = writeBehind;
+    this.lingerMillis = lingerMillis;
+    this.maxBatch = maxBatch;
+  }
+
+  /** Get the writer configured by the system properties, creating it the first time. */
+  public static synchronized PendingCommentWriter getInstance() {
+    if (instance == null) {
+      instance = new PendingCommentWriter(
+          Boolean.getBoolean("comments.write-behind"),
+          Long.getLong("comments.write-behind.linger-millis", DEFAULT_LINGER_MILLIS),
+          Integer.getInteger("comments.write-behind.max-batch", DEFAULT_MAX_BATCH));
+    }
+    return instance;
+  }
+
+  /**
+   * Store a pending comment, returning once it is in the datastore.
+   *
+   * @param entity The "PendingComment" entity, which has its key set once this returns.
+   * @return the key of the stored entity.
+   * @throws InterruptedException if the request was interrupted waiting for its batch.
+   */
+  public Key write(Entity entity) throws InterruptedException {
+    if (!writeBehind) {
+      return DATASTORE.put(entity);
+    }
+
+    Batch batch;
+    int index;
+    synchronized (this) {
+      if (open == null) {
+        open = new Batch();
+      }
+      batch = open;
+      index = batch.entities.size();
+      batch.entities.add(entity);
+      if (batch.entities.size() >= maxBatch) {
+        open = null;
+        notifyAll();
+      }
+    }
+
+    // The request that started the batch writes it.
+    if (index == 0) {
+      flush(batch);
+    }
+    try {
+      return batch.written.get().get(index);
+    } catch (ExecutionException e) {
+      throw (RuntimeException) e.getCause();
+    }
+  }
+
+  /**
+   * Wait for the batch to fill or the linger time to pass, then put it. The batch is put even
+   * if the wait is interrupted since other requests are waiting for it.
+   */
+  private void flush(Batch batch) {
+    synchronized (this) {
+      long deadline = System.currentTimeMillis() + lingerMillis;
+      long remaining;
+      try {
+        while (open == batch && (remaining = deadline - System.currentTimeMillis()) > 0) {
+          wait(remaining);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (open == batch) {
+        open = null;
+      }
+    }
+
+    try {
+      batch.written.complete(DATASTORE.put(batch.entities));
+    } catch (RuntimeException e) {
+      batch.written.completeExceptionally(e);
+    }
+  }
+
+  /** Comments written with one put, and the keys they were given once it finishes. */
+  private static final class Batch {
+    private final List<Entity> entities = new ArrayList<>();
+    private final CompletableFuture<List<Key>> written = new CompletableFuture<>();
+  }
+}
@@ -0,0 +1,93 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.ratelimit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets keyed by user, each allowing a burst of CAPACITY requests and refilling one
+ * token every refill interval.
+ *
+ * <p>Each bucket is a single AtomicLong holding the time at which it will be full again,
+ * which says exactly how many tokens it has at any moment. Taking a token moves that time
+ * forward by one interval with a compare and set, so requests from the same user never take
+ * a lock and requests from different users never touch the same memory. A bucket whose full
+ * time has passed is the same as a missing one, so those are evicted in periodic sweeps. A
+ * request that races with the sweep of its bucket can at most get one extra token.
+ */
+public final class TokenBucketLimiter {
+  /** Sweep idle buckets once every this many requests. */
+  private static final int SWEEP_INTERVAL = 1024;
+
+  private final long capacity;
+  private final long refillNanos;
+  private final ConcurrentMap<String, AtomicLong> fullAt = new ConcurrentHashMap<>();
+  private final AtomicLong requests = new AtomicLong();
+
+  /**
+   * Create a limiter.
+   *
+   * @param capacity The number of requests a user can make at once.
+   * @param refillNanos The time it takes for one token to come back.
+   */
+  public TokenBucketLimiter(long capacity, long refillNanos) {
+    if (capacity < 1 || refillNanos < 1) {
+      throw new IllegalArgumentException("Capacity and refill time must be positive.");
+    }
+    this.capacity = capacity;
+    this.refillNanos = refillNanos;
+  }
+
+  /**
+   * Take a token from a user's bucket.
+   *
+   * @param key The user the request is from.
+   * @return 0 if the request is allowed, otherwise the nanoseconds until a token is available.
+   */
+  public long tryAcquire(String key) {
+    long now = System.nanoTime();
+    if (requests.incrementAndGet() % SWEEP_INTERVAL == 0) {
+      sweep(now);
+    }
+
+    AtomicLong bucket = fullAt.computeIfAbsent(key, k -> new AtomicLong(now));
+    while (true) {
+      long current = bucket.get();
+      long base = current - now > 0 ? current : now;
+      long next = base + refillNanos;
+
+      // The bucket has no tokens left if taking one would push it past its capacity.
+      long overflow = next - now - capacity * refillNanos;
+      if (overflow > 0) {
+        return overflow;
+      }
+      if (bucket.compareAndSet(current, next)) {
+        return 0;
+      }
+    }
+  }
+
+  /** Returns the number of users with a bucket that is not full. */
+  public int size() {
+    return fullAt.size();
+  }
+
+  /** Remove the buckets that have refilled, which are the same as new buckets. */
+  private void sweep(long now) {
+    fullAt.values().removeIf(bucket -> bucket.get() - now <= 0);
+  }
+}
@@ -0,0 +1,331 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.search;
+
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentsVersion;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory inverted index from the words in each comment's name and message to the ids of
+ * the comments that contain them, so searches never touch the datastore.
+ *
+ * <p>The index is loaded the first time it is searched, from the snapshot if there is one
+ * and otherwise with a scan over every comment, after which a new snapshot is saved.
+ * Comments published on this instance are added as they are published. Comments published
+ * on other instances are picked up by scanning the comments published since the last scan
+ * whenever the comments version moves. Deleting the comments clears the index and its
+ * snapshot, so the next search loads it again.
+ *
+ * <p>Loading, catching up and saving snapshots read and write the datastore while holding
+ * only the sync lock, and take the index lock just to swap in their results, so searches
+ * that do not need to sync are never held up by datastore calls.
+ */
+public final class CommentIndex {
+  /**
+   * Comments are stamped when they are published, before their transaction commits and with
+   * the clock of the instance that published them, so catch up scans reach back this far.
+   */
+  private static final long CATCH_UP_MARGIN_MILLIS = 60 * 1000;
+  private static final int SCAN_CHUNK_SIZE = 500;
+  private static final int SNAPSHOT_INTERVAL = 500;
+  private static final int MAX_TOKEN_LENGTH = 64;
+  private static final DatastoreService DATASTORE = DatastoreServiceFactory.getDatastoreService();
+  private static final CommentIndex INSTANCE = new CommentIndex();
+
+  /** Held while syncing with the datastore, so only one request loads or catches up. */
+  private final Object syncLock = new Object();
+
+  /** The posting list of every token, sorted so tokens with a prefix are next to each other. */
+  private TreeMap<String, PostingList> postings = new TreeMap<>();
+
+  private boolean loaded;
+  private long syncedVersion;
+  private long scannedUpTo;
+  private int addsSinceSnapshot;
+
+  private CommentIndex() {}
+
+  public static CommentIndex getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Add a newly published comment to the index. Nothing happens if the index is not loaded
+   * yet since loading it, or the catch up after the version moves, reads the comment from
+   * the datastore.
+   *
+   * @param comment The comment that was written to the datastore.
+   */
+  public synchronized void add(Comment comment) {
+    if (loaded && index(postings, comment.getId(), comment.getName(), comment.getMessage())) {
+      addsSinceSnapshot++;
+    }
+  }
+
+  /** Drop the index and its snapshot after the comments were deleted. */
+  public void clear() {
+    // Waiting for the sync lock keeps a sync that started before the delete from saving a
+    // snapshot of the deleted comments after this one is deleted.
+    synchronized (syncLock) {
+      synchronized (this) {
+        postings = new TreeMap<>();
+        loaded = false;
+      }
+      IndexSnapshot.delete();
+    }
+  }
+
+  /**
+   * Find the comments that contain every term of the query. A term ending in "*" matches
+   * any word that starts with it.
+   *
+   * @param query The terms separated by spaces.
+   * @param afterId Only ids greater than this are returned, so results can be paged.
+   * @param limit The maximum number of ids to return.
+   * @return the matching comment ids in ascending order.
+   * @throws IllegalArgumentException if the query has no words in it.
+   */
+  public List<Long> search(String query, long afterId, int limit) {
+    // Each term is split into words the same way comments are, with the prefix marker kept
+    // on the last word of a prefix term.
+    List<String> words = new ArrayList<>();
+    for (String term : query.trim().split("\\s+")) {
+      boolean prefix = term.endsWith("*");
+      List<String> tokens = tokenize(prefix ? term.substring(0, term.length() - 1) : term);
+      if (prefix && !tokens.isEmpty()) {
+        tokens.set(tokens.size() - 1, tokens.get(tokens.size() - 1) + "*");
+      }
+      words.addAll(tokens);
+    }
+    if (words.isEmpty()) {
+      throw new IllegalArgumentException("The query has no words to search for.");
+    }
+
+    sync();
+
+    synchronized (this) {
+      List<PostingList> matches = new ArrayList<>();
+      for (String word : words) {
+        if (word.endsWith("*")) {
+          matches.add(getPrefixPostings(word.substring(0, word.length() - 1)));
+        } else {
+          matches.add(getPostings(word));
+        }
+      }
+
+      // Intersect the shortest lists first so the intermediate results stay small.
+      matches.sort(Comparator.comparingInt(PostingList::size));
+      PostingList result = matches.get(0);
+      for (int i = 1; i < matches.size() && result.size() > 0; i++) {
+        result = PostingList.intersect(result, matches.get(i));
+      }
+
+      List<Long> ids = new ArrayList<>();
+      for (int i = 0; i < result.size() && ids.size() < limit; i++) {
+        if (result.get(i) > afterId) {
+          ids.add(result.get(i));
+        }
+      }
+      return ids;
+    }
+  }
+
+  /**
+   * Split text into the lower case words it is indexed under.
+   *
+   * @param text The text to split, which may be null.
+   * @return the words in the text, in order.
+   */
+  static List<String> tokenize(String text) {
+    List<String> tokens = new ArrayList<>();
+    if (text == null) {
+      return tokens;
+    }
+    for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+")) {
+      if (!token.isEmpty() && token.length() <= MAX_TOKEN_LENGTH) {
+        tokens.add(token);
+      }
+    }
+    return tokens;
+  }
+
+  /**
+   * Add a comment's words to the given posting lists.
+   *
+   * @return whether any posting list changed.
+   */
+  private static boolean index(
+      Map<String, PostingList> target, long id, String name, String message) {
+    boolean changed = false;
+    for (String token : tokenize(name)) {
+      changed |= target.computeIfAbsent(token, t -> new PostingList()).add(id);
+    }
+    for (String token : tokenize(message)) {
+      changed |= target.computeIfAbsent(token, t -> new PostingList()).add(id);
+    }
+    return changed;
+  }
+
+  private PostingList getPostings(String token) {
+    PostingList list = postings.get(token);
+    return list == null ? new PostingList() : list;
+  }
+
+  private PostingList getPrefixPostings(String prefix) {
+    Map<String, PostingList> range = postings.subMap(prefix, prefix + Character.MAX_VALUE);
+    if (range.isEmpty()) {
+      return new PostingList();
+    }
+    return PostingList.union(new ArrayList<>(range.values()));
+  }
+
+  /**
+   * Load the index if needed, catch up with comments published on other instances and save a
+   * snapshot once enough comments were added since the last one.
+   */
+  private void sync() {
+    synchronized (syncLock) {
+      long version = CommentsVersion.get();
+      boolean needsLoad;
+      long since;
+      synchronized (this) {
+        if (loaded && version == syncedVersion && addsSinceSnapshot < SNAPSHOT_INTERVAL) {
+          return;
+        }
+        needsLoad = !loaded;
+        since = scannedUpTo - CATCH_UP_MARGIN_MILLIS;
+      }
+
+      if (needsLoad) {
+        load(version);
+      } else {
+        catchUp(version, since);
+      }
+      saveSnapshotIfDue();
+    }
+  }
+
+  /**
+   * Build the index from the snapshot and the comments published since it was saved, or from
+   * every comment if there is no snapshot. The index is only marked as loaded once this has
+   * succeeded, so a failed load is tried again by the next search.
+   *
+   * @param version The comments version read before loading.
+   */
+  private void load(long version) {
+    TreeMap<String, PostingList> loadedPostings = new TreeMap<>();
+    Long snapshotScannedUpTo = IndexSnapshot.load(loadedPostings);
+    long startedAt = System.currentTimeMillis();
+    int adds = 0;
+    if (snapshotScannedUpTo != null) {
+      for (Entity entity : scan(snapshotScannedUpTo - CATCH_UP_MARGIN_MILLIS)) {
+        if (index(loadedPostings, entity)) {
+          adds++;
+        }
+      }
+    } else {
+      for (Entity entity : scan(Long.MIN_VALUE)) {
+        index(loadedPostings, entity);
+      }
+      // The new snapshot holds everything scanned, so it is saved from the private copy.
+      if (!IndexSnapshot.save(IndexSnapshot.encode(loadedPostings), startedAt)) {
+        adds = SNAPSHOT_INTERVAL;
+      }
+    }
+
+    synchronized (this) {
+      postings = loadedPostings;
+      scannedUpTo = startedAt;
+      syncedVersion = version;
+      addsSinceSnapshot = adds;
+      loaded = true;
+    }
+  }
+
+  /**
+   * Index the comments published since the last scan, which were published on other
+   * instances or while the index was loading.
+   *
+   * @param version The comments version read before the scan.
+   * @param since The earliest publish time to scan.
+   */
+  private void catchUp(long version, long since) {
+    long startedAt = System.currentTimeMillis();
+    List<Entity> entities = new ArrayList<>();
+    for (Entity entity : scan(since)) {
+      entities.add(entity);
+    }
+
+    synchronized (this) {
+      for (Entity entity : entities) {
+        if (index(postings, entity)) {
+          addsSinceSnapshot++;
+        }
+      }
+      scannedUpTo = startedAt;
+      syncedVersion = version;
+    }
+  }
+
+  /** Save a snapshot if enough comments were added since the last one. */
+  private void saveSnapshotIfDue() {
+    byte[] bytes;
+    long snapshotScannedUpTo;
+    synchronized (this) {
+      if (!loaded || addsSinceSnapshot < SNAPSHOT_INTERVAL) {
+        return;
+      }
+      bytes = IndexSnapshot.encode(postings);
+      snapshotScannedUpTo = scannedUpTo;
+      addsSinceSnapshot = 0;
+    }
+    IndexSnapshot.save(bytes, snapshotScannedUpTo);
+  }
+
+  private static boolean index(Map<String, PostingList> target, Entity entity) {
+    return index(target, entity.getKey().getId(),
+        (String) entity.getProperty("name"), (String) entity.getProperty("message"));
+  }
+
+  /**
+   * Read every comment published at or after the given time in chunks, so a full scan only
+   * holds one chunk in memory at a time.
+   *
+   * @param since The earliest publish time to scan, or Long.MIN_VALUE to scan every comment.
+   * @return the comments, read lazily as they are iterated.
+   */
+  private static Iterable<Entity> scan(long since) {
+    Query query = new Query("Comment");
+    if (since != Long.MIN_VALUE) {
+      query.setFilter(
+          new FilterPredicate("publishedAt", FilterOperator.GREATER_THAN_OR_EQUAL, since));
+    }
+    FetchOptions fetchOptions = FetchOptions.Builder.withChunkSize(SCAN_CHUNK_SIZE);
+    return DATASTORE.prepare(query).asIterable(fetchOptions);
+  }
+}
@@ -0,0 +1,221 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.search;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Saves the search index to the datastore so a new instance can load it with a few gets
+ * instead of scanning every comment.
+ *
+ * <p>The snapshot is a gzipped stream of each token followed by its posting list, with the
+ * ids stored as variable length differences from the previous id. The stream is split into
+ * "SearchIndexChunk" entities under the "SearchIndexSnapshot" entity that says how many
+ * chunks there are, and all of them are written in one transaction so a half written
+ * snapshot is never loaded.
+ */
+final class IndexSnapshot {
+  /** Version 2 snapshots are caught up by publish time rather than post time. */
+  private static final int FORMAT_VERSION = 2;
+  /** Blob properties are limited to 1MB. */
+  private static final int CHUNK_BYTES = 900 * 1024;
+  private static final DatastoreService DATASTORE = DatastoreServiceFactory.getDatastoreService();
+  private static final Key SNAPSHOT_KEY = KeyFactory.createKey("SearchIndexSnapshot", "comments");
+
+  private IndexSnapshot() {}
+
+  /**
+   * Encode the index so it can be saved without holding on to it.
+   *
+   * @param postings The posting list of every token.
+   * @return the encoded snapshot, or null if it could not be encoded.
+   */
+  static byte[] encode(Map<String, PostingList> postings) {
+    try {
+      return encodePostings(postings);
+    } catch (IOException e) {
+      System.err.println("This error occurred encoding the search index: " + e);
+      return null;
+    }
+  }
+
+  /**
+   * Save a snapshot of the index, replacing the previous one.
+   *
+   * @param bytes The encoded index, or null if it could not be encoded.
+   * @param scannedUpTo The time of the last scan that was included in the index.
+   * @return whether the snapshot was saved.
+   */
+  static boolean save(byte[] bytes, long scannedUpTo) {
+    if (bytes == null) {
+      return false;
+    }
+
+    List<Entity> entities = new ArrayList<>();
+    for (int start = 0; start < bytes.length; start += CHUNK_BYTES) {
+      Entity chunk = new Entity(getChunkKey(entities.size()));
+      byte[] data = Arrays.copyOfRange(bytes, start, Math.min(bytes.length, start + CHUNK_BYTES));
+      chunk.setUnindexedProperty("data", new Blob(data));
+      entities.add(chunk);
+    }
+    Entity snapshot = new Entity(SNAPSHOT_KEY);
+    snapshot.setUnindexedProperty("chunks", (long) entities.size());
+    snapshot.setUnindexedProperty("scannedUpTo", scannedUpTo);
+    entities.add(snapshot);
+
+    // The chunks are children of the snapshot, so they all commit together in one write to
+    // its entity group.
+    Transaction transaction = DATASTORE.beginTransaction();
+    try {
+      DATASTORE.put(transaction, entities);
+      transaction.commit();
+      return true;
+    } catch (RuntimeException e) {
+      System.err.println("This error occurred saving the search index: " + e);
+      return false;
+    } finally {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+    }
+  }
+
+  /**
+   * Load the snapshot into an empty index.
+   *
+   * @param postings The map to add the posting list of every token to.
+   * @return the time of the last scan included in the snapshot, or null if there is no
+   * snapshot that could be read.
+   */
+  static Long load(Map<String, PostingList> postings) {
+    try {
+      Entity snapshot = DATASTORE.get(SNAPSHOT_KEY);
+      int numChunks = ((Long) snapshot.getProperty("chunks")).intValue();
+      List<Key> keys = new ArrayList<>();
+      for (int i = 0; i < numChunks; i++) {
+        keys.add(getChunkKey(i));
+      }
+      Map<Key, Entity> chunks = DATASTORE.get(keys);
+
+      List<InputStream> streams = new ArrayList<>();
+      for (Key key : keys) {
+        Entity chunk = chunks.get(key);
+        if (chunk == null) {
+          return null;
+        }
+        streams.add(new ByteArrayInputStream(((Blob) chunk.getProperty("data")).getBytes()));
+      }
+      decode(new SequenceInputStream(Collections.enumeration(streams)), postings);
+      return (Long) snapshot.getProperty("scannedUpTo");
+    } catch (EntityNotFoundException e) {
+      return null;
+    } catch (IOException e) {
+      System.err.println("This error occurred loading the search index: " + e);
+      postings.clear();
+      return null;
+    }
+  }
+
+  /** Delete the snapshot. The chunks are left to be overwritten by the next snapshot. */
+  static void delete() {
+    DATASTORE.delete(SNAPSHOT_KEY);
+  }
+
+  private static Key getChunkKey(int index) {
+    return KeyFactory.createKey(SNAPSHOT_KEY, "SearchIndexChunk", index + 1);
+  }
+
+  private static byte[] encodePostings(Map<String, PostingList> postings) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(postings.size());
+      for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+        PostingList list = entry.getValue();
+        out.writeUTF(entry.getKey());
+        writeVarLong(out, list.size());
+        long previous = 0;
+        for (int i = 0; i < list.size(); i++) {
+          writeVarLong(out, list.get(i) - previous);
+          previous = list.get(i);
+        }
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void decode(InputStream stream, Map<String, PostingList> postings)
+      throws IOException {
+    try (DataInputStream in = new DataInputStream(new GZIPInputStream(stream))) {
+      if (in.readInt() != FORMAT_VERSION) {
+        throw new IOException("Unknown search index snapshot format.");
+      }
+      int numTokens = in.readInt();
+      for (int t = 0; t < numTokens; t++) {
+        String token = in.readUTF();
+        int size = (int) readVarLong(in);
+        long[] ids = new long[size];
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+          previous += readVarLong(in);
+          ids[i] = previous;
+        }
+        postings.put(token, PostingList.ofSorted(ids, size));
+      }
+    }
+  }
+
+  /** Write a non-negative number seven bits at a time, lowest bits first. */
+  private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  private static long readVarLong(DataInputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed number in search index snapshot.");
+  }
+}
@@ -0,0 +1,133 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** Sorted set of comment ids kept in a plain long array so each posting costs 8 bytes. */
+final class PostingList {
+  private static final long[] EMPTY = new long[0];
+
+  private long[] ids;
+  private int size;
+
+  PostingList() {
+    this(EMPTY, 0);
+  }
+
+  private PostingList(long[] ids, int size) {
+    this.ids = ids;
+    this.size = size;
+  }
+
+  /**
+   * Add a comment id, keeping the ids sorted.
+   *
+   * @param id The comment id.
+   * @return true if the id was not already in the list.
+   */
+  boolean add(long id) {
+    int index = Arrays.binarySearch(ids, 0, size, id);
+    if (index >= 0) {
+      return false;
+    }
+
+    index = -(index + 1);
+    if (size == ids.length) {
+      ids = Arrays.copyOf(ids, Math.max(4, size + (size >> 1)));
+    }
+    System.arraycopy(ids, index, ids, index + 1, size - index);
+    ids[index] = id;
+    size++;
+    return true;
+  }
+
+  int size() {
+    return size;
+  }
+
+  long get(int index) {
+    return ids[index];
+  }
+
+  /**
+   * Make a list from ids that are already sorted and distinct.
+   *
+   * @param ids The sorted ids, which are kept rather than copied.
+   * @param size The number of ids in use.
+   */
+  static PostingList ofSorted(long[] ids, int size) {
+    return new PostingList(ids, size);
+  }
+
+  /**
+   * Merge lists into one list holding every id in any of them.
+   *
+   * @param lists The lists to merge.
+   * @return the union of the lists.
+   */
+  static PostingList union(List<PostingList> lists) {
+    if (lists.size() == 1) {
+      return lists.get(0);
+    }
+
+    int total = 0;
+    for (PostingList list : lists) {
+      total += list.size;
+    }
+    long[] merged = new long[total];
+    int position = 0;
+    for (PostingList list : lists) {
+      System.arraycopy(list.ids, 0, merged, position, list.size);
+      position += list.size;
+    }
+    Arrays.sort(merged);
+
+    int size = 0;
+    for (int i = 0; i < total; i++) {
+      if (size == 0 || merged[size - 1] != merged[i]) {
+        merged[size++] = merged[i];
+      }
+    }
+    return new PostingList(merged, size);
+  }
+
+  /**
+   * Intersect two lists.
+   *
+   * @param a The first list.
+   * @param b The second list.
+   * @return the ids that are in both lists.
+   */
+  static PostingList intersect(PostingList a, PostingList b) {
+    long[] common = new long[Math.min(a.size, b.size)];
+    int size = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.size && j < b.size) {
+      if (a.ids[i] < b.ids[j]) {
+        i++;
+      } else if (a.ids[i] > b.ids[j]) {
+        j++;
+      } else {
+        common[size++] = a.ids[i];
+        i++;
+        j++;
+      }
+    }
+    return new PostingList(common, size);
+  }
+}
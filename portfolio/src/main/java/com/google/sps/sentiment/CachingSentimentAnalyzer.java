@@ -0,0 +1,187 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.sentiment;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sentiment analyzer that remembers the scores of messages it has already seen.
+ *
+ * <p>Scores are keyed by a hash of the normalized message, so repeated messages that only
+ * differ in case or whitespace share a score. The most recently used scores are kept in
+ * memory and expire after a fixed time. Optionally scores are also stored in the datastore
+ * as "SentimentScore" entities so they survive instance restarts.
+ */
+public final class CachingSentimentAnalyzer implements SentimentAnalyzer {
+  private static final DatastoreService DATASTORE = DatastoreServiceFactory.getDatastoreService();
+
+  private final SentimentAnalyzer analyzer;
+  private final long ttlMillis;
+  private final boolean useDatastore;
+  private final Map<String, CachedScore> scores;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong datastoreHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Create a cache in front of another analyzer.
+   *
+   * @param analyzer The analyzer that scores messages that are not cached.
+   * @param maxEntries The number of scores kept in memory.
+   * @param ttlMillis How long a score stays cached.
+   * @param useDatastore Whether scores are also stored in the datastore.
+   */
+  public CachingSentimentAnalyzer(
+      SentimentAnalyzer analyzer, int maxEntries, long ttlMillis, boolean useDatastore) {
+    this.analyzer = analyzer;
+    this.ttlMillis = ttlMillis;
+    this.useDatastore = useDatastore;
+    this.scores = new LinkedHashMap<String, CachedScore>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedScore> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  @Override
+  public float getSentimentScore(String message) throws IOException {
+    String hash = hashMessage(message);
+    long now = System.currentTimeMillis();
+
+    CachedScore cachedScore;
+    synchronized (scores) {
+      cachedScore = scores.get(hash);
+    }
+    if (cachedScore != null && cachedScore.expiresAt > now) {
+      hits.incrementAndGet();
+      return cachedScore.score;
+    }
+
+    if (useDatastore) {
+      cachedScore = getStoredScore(hash);
+      if (cachedScore != null && cachedScore.expiresAt > now) {
+        datastoreHits.incrementAndGet();
+        cacheScore(hash, cachedScore);
+        return cachedScore.score;
+      }
+    }
+
+    misses.incrementAndGet();
+    float score = analyzer.getSentimentScore(message);
+    cachedScore = new CachedScore(score, now + ttlMillis);
+    cacheScore(hash, cachedScore);
+    if (useDatastore) {
+      storeScore(hash, cachedScore);
+    }
+    return score;
+  }
+
+  /** Returns the number of scores found in memory. */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /** Returns the number of scores found in the datastore but not in memory. */
+  public long getDatastoreHitCount() {
+    return datastoreHits.get();
+  }
+
+  /** Returns the number of messages that had to be scored by the wrapped analyzer. */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  private void cacheScore(String hash, CachedScore cachedScore) {
+    synchronized (scores) {
+      scores.put(hash, cachedScore);
+    }
+  }
+
+  private CachedScore getStoredScore(String hash) {
+    try {
+      Entity entity = DATASTORE.get(makeKey(hash));
+      float score = ((Double) entity.getProperty("score")).floatValue();
+      long expiresAt = (long) entity.getProperty("expiresAt");
+      return new CachedScore(score, expiresAt);
+    } catch (EntityNotFoundException e) {
+      return null;
+    }
+  }
+
+  private void storeScore(String hash, CachedScore cachedScore) {
+    Entity entity = new Entity(makeKey(hash));
+    entity.setUnindexedProperty("score", cachedScore.score);
+    entity.setUnindexedProperty("expiresAt", cachedScore.expiresAt);
+    try {
+      DATASTORE.put(entity);
+    } catch (RuntimeException e) {
+      // The score is still cached in memory, so losing the stored copy is not fatal.
+      System.err.println("Could not store sentiment score: " + e);
+    }
+  }
+
+  private static Key makeKey(String hash) {
+    return KeyFactory.createKey("SentimentScore", hash);
+  }
+
+  /**
+   * Hash a message after lower casing it and collapsing its whitespace.
+   *
+   * @param message The message to hash.
+   * @return the SHA-256 hash of the normalized message as a hex string.
+   */
+  private static String hashMessage(String message) {
+    String normalized = message.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    byte[] digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(e);
+    }
+
+    StringBuilder hash = new StringBuilder(digest.length * 2);
+    for (byte b : digest) {
+      hash.append(String.format("%02x", b));
+    }
+    return hash.toString();
+  }
+
+  /** A score and the time it stops being valid. */
+  private static final class CachedScore {
+    private final float score;
+    private final long expiresAt;
+
+    private CachedScore(float score, long expiresAt) {
+      this.score = score;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
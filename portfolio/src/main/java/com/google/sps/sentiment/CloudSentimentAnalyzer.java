@@ -0,0 +1,116 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.sentiment;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.language.v1.AnalyzeSentimentRequest;
+import com.google.cloud.language.v1.AnalyzeSentimentResponse;
+import com.google.cloud.language.v1.Document;
+import com.google.cloud.language.v1.LanguageServiceClient;
+import com.google.sps.metrics.Counter;
+import com.google.sps.metrics.Gauge;
+import com.google.sps.metrics.Histogram;
+import com.google.sps.metrics.Metrics;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sentiment analyzer backed by the Cloud Natural Language API.
+ *
+ * <p>One client is shared by every call so the gRPC channel and its connections are only
+ * set up once. The number of calls in flight is bounded and every call has a deadline so a
+ * slow API cannot tie up every request thread.
+ */
+public final class CloudSentimentAnalyzer implements SentimentAnalyzer, AutoCloseable {
+  private static final Histogram CALL_DURATION =
+      Metrics.DOWNSTREAM_CALL_DURATION.labels("language", "analyzeSentiment");
+  private static final Counter CALL_ERRORS =
+      Metrics.DOWNSTREAM_CALL_ERRORS.labels("language", "analyzeSentiment");
+  private static final Gauge CALLS_IN_FLIGHT = Metrics.DOWNSTREAM_CALLS_IN_FLIGHT.labels("language");
+
+  private final LanguageServiceClient languageService;
+  private final Semaphore permits;
+  private final long deadlineMillis;
+
+  /**
+   * Create an analyzer with its own long-lived client.
+   *
+   * @param maxConcurrentCalls The maximum number of calls to the API that can be in flight.
+   * @param deadlineMillis The time a call can take, including waiting for a permit.
+   * @throws IOException if the client could not be created.
+   */
+  public CloudSentimentAnalyzer(int maxConcurrentCalls, long deadlineMillis) throws IOException {
+    this.languageService = LanguageServiceClient.create();
+    this.permits = new Semaphore(maxConcurrentCalls);
+    this.deadlineMillis = deadlineMillis;
+  }
+
+  @Override
+  public float getSentimentScore(String message) throws IOException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    try {
+      if (!permits.tryAcquire(deadlineMillis, TimeUnit.MILLISECONDS)) {
+        throw new IOException("Timed out waiting for a sentiment analysis permit.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for a sentiment analysis permit.");
+    }
+
+    CALLS_IN_FLIGHT.increment();
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      Document doc =
+          Document.newBuilder().setContent(message).setType(Document.Type.PLAIN_TEXT).build();
+      AnalyzeSentimentRequest request =
+          AnalyzeSentimentRequest.newBuilder().setDocument(doc).build();
+      ApiFuture<AnalyzeSentimentResponse> future =
+          languageService.analyzeSentimentCallable().futureCall(request);
+      try {
+        long remainingNanos = deadline - System.nanoTime();
+        float score =
+            future.get(remainingNanos, TimeUnit.NANOSECONDS).getDocumentSentiment().getScore();
+        failed = false;
+        return score;
+      } catch (TimeoutException e) {
+        future.cancel(true);
+        throw new IOException("Sentiment analysis did not finish within " + deadlineMillis + "ms.");
+      } catch (ExecutionException e) {
+        throw new IOException("Sentiment analysis failed.", e.getCause());
+      } catch (InterruptedException e) {
+        future.cancel(true);
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for sentiment analysis.");
+      }
+    } finally {
+      CALL_DURATION.record(System.nanoTime() - start);
+      if (failed) {
+        CALL_ERRORS.increment();
+      }
+      CALLS_IN_FLIGHT.decrement();
+      permits.release();
+    }
+  }
+
+  @Override
+  public void close() {
+    languageService.close();
+  }
+}
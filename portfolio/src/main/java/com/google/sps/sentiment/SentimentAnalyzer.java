@@ -0,0 +1,30 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.sentiment;
+
+import java.io.IOException;
+
+/** Interface for anything that can give a message a sentiment score. */
+public interface SentimentAnalyzer {
+
+  /**
+   * Generate and return the sentiment score of the given message.
+   *
+   * @param message The message that will be analyzed.
+   * @return The sentiment score of the message, from -1 (negative) to 1 (positive).
+   * @throws IOException if the message could not be analyzed.
+   */
+  float getSentimentScore(String message) throws IOException;
+}
@@ -0,0 +1,68 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.sentiment;
+
+import java.io.IOException;
+
+/**
+ * Provides the sentiment analyzer shared by the whole app.
+ *
+ * <p>The analyzer is picked with the "sentiment.analyzer" system property, which is either
+ * "cloud" (the default) or "stub". The cloud analyzer is configured with the
+ * "sentiment.max-concurrent-calls" and "sentiment.deadline-millis" system properties.
+ *
+ * <p>The analyzer is wrapped in a cache of scores configured with the
+ * "sentiment.cache.max-entries", "sentiment.cache.ttl-seconds" and
+ * "sentiment.cache.datastore" system properties.
+ */
+public final class SentimentAnalyzers {
+  private static final int DEFAULT_MAX_CONCURRENT_CALLS = 8;
+  private static final long DEFAULT_DEADLINE_MILLIS = 5000;
+  private static final int DEFAULT_CACHE_MAX_ENTRIES = 10000;
+  private static final long DEFAULT_CACHE_TTL_SECONDS = 24 * 60 * 60;
+
+  private static SentimentAnalyzer analyzer;
+
+  private SentimentAnalyzers() {}
+
+  /**
+   * Get the shared sentiment analyzer, creating it the first time this is called.
+   *
+   * @return the configured sentiment analyzer.
+   * @throws IOException if the analyzer could not be created.
+   */
+  public static synchronized SentimentAnalyzer getDefault() throws IOException {
+    if (analyzer == null) {
+      int maxEntries = Integer.getInteger("sentiment.cache.max-entries", DEFAULT_CACHE_MAX_ENTRIES);
+      long ttlSeconds = Long.getLong("sentiment.cache.ttl-seconds", DEFAULT_CACHE_TTL_SECONDS);
+      boolean useDatastore = Boolean.getBoolean("sentiment.cache.datastore");
+      analyzer = new CachingSentimentAnalyzer(
+          createAnalyzer(), maxEntries, ttlSeconds * 1000, useDatastore);
+    }
+    return analyzer;
+  }
+
+  private static SentimentAnalyzer createAnalyzer() throws IOException {
+    String type = System.getProperty("sentiment.analyzer", "cloud");
+    if (type.equals("stub")) {
+      return new StubSentimentAnalyzer();
+    }
+
+    int maxConcurrentCalls =
+        Integer.getInteger("sentiment.max-concurrent-calls", DEFAULT_MAX_CONCURRENT_CALLS);
+    long deadlineMillis = Long.getLong("sentiment.deadline-millis", DEFAULT_DEADLINE_MILLIS);
+    return new CloudSentimentAnalyzer(maxConcurrentCalls, deadlineMillis);
+  }
+}
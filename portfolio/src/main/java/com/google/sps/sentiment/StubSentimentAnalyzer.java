@@ -0,0 +1,53 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.sentiment;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Sentiment analyzer that scores messages locally by counting positive and negative words.
+ *
+ * <p>This is meant for local development and benchmarks where calling the Natural Language
+ * API would be slow or unavailable. It is not a replacement for the real analysis.
+ */
+public final class StubSentimentAnalyzer implements SentimentAnalyzer {
+  private static final Set<String> POSITIVE_WORDS = new HashSet<>(Arrays.asList(
+      "amazing", "awesome", "beautiful", "best", "cool", "excellent", "fantastic", "good",
+      "great", "happy", "like", "love", "nice", "perfect", "thanks", "wonderful"));
+  private static final Set<String> NEGATIVE_WORDS = new HashSet<>(Arrays.asList(
+      "angry", "awful", "bad", "boring", "dislike", "hate", "horrible", "sad", "stupid",
+      "terrible", "ugly", "worse", "worst"));
+
+  @Override
+  public float getSentimentScore(String message) {
+    int positive = 0;
+    int negative = 0;
+    for (String word : message.toLowerCase(Locale.ROOT).split("[^a-z]+")) {
+      if (POSITIVE_WORDS.contains(word)) {
+        positive++;
+      } else if (NEGATIVE_WORDS.contains(word)) {
+        negative++;
+      }
+    }
+
+    if (positive + negative == 0) {
+      return 0f;
+    }
+    return (float) (positive - negative) / (positive + negative);
+  }
+}
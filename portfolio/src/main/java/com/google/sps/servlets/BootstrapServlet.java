@@ -0,0 +1,70 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.CommentPage;
+import com.google.sps.data.CommentStatsCounters;
+import com.google.sps.data.CommentsBootstrap;
+import com.google.sps.data.CommentsVersion;
+import com.google.sps.data.UserStatus;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.Objects;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that returns the login status, the first page of comments and the number of
+ * comments in one response, so the comments section can render after a single round trip.
+ *
+ * <p>The page is read with the same filter parameters as /data and is served from the
+ * in-memory views, since the first page always falls within the top comments.
+ */
+@WebServlet("/comments/bootstrap")
+public class BootstrapServlet extends HttpServlet {
+  private static final UserService USER = UserServiceFactory.getUserService();
+  private static final Gson GSON = new Gson();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    int maxComments = DataServlet.getNumComments(request);
+    String sortBy = DataServlet.getSortProperty(request);
+    SortDirection direction = DataServlet.getSortDirection(request);
+    boolean loggedIn = USER.isUserLoggedIn();
+    UserStatus userStatus = new UserStatus(loggedIn, LoginUrls.get(request, loggedIn));
+
+    // The response changes when the comments do or when the user logs in or out.
+    long version = CommentsVersion.get();
+    int variant = Objects.hash(sortBy, direction, maxComments, loggedIn, userStatus.getUrl());
+    String etag = "\"" + Long.toHexString(version) + "-" + Integer.toHexString(variant) + "\"";
+    response.setHeader("Vary", "Cookie");
+    HttpCaching.setValidators(response, etag, -1);
+    if (HttpCaching.isNotModified(request, etag, -1)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    CommentPage page = DataServlet.getPageFromViews(sortBy, direction, version, 0, maxComments);
+    long totalComments = CommentStatsCounters.read().getCount();
+
+    response.setContentType("application/json;");
+    response.getWriter().println(GSON.toJson(new CommentsBootstrap(userStatus, page, totalComments)));
+  }
+}
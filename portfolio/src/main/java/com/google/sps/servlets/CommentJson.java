@@ -0,0 +1,175 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentPage;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes comments as JSON with only the fields the client asked for, and maps those fields
+ * to datastore projections so fields that are not needed are never read.
+ *
+ * <p>A projection on more than one property needs a composite index, and a query without one
+ * fails in production. Only the property sets in INDEXED_PROJECTIONS, which mirror
+ * datastore-indexes.xml, are projected. Other field sets read whole entities and the unwanted
+ * fields are left out when the JSON is written.
+ *
+ * <p>The JSON matches what Gson writes for a Comment, including leaving out null fields.
+ */
+final class CommentJson {
+  /** Every field of a comment, in the order they are written. */
+  static final Set<String> ALL_FIELDS = Collections.unmodifiableSet(new LinkedHashSet<>(
+      Arrays.asList("id", "name", "email", "message", "sentimentScore", "timestamp")));
+
+  /** The projected properties with a composite index for each sort property. */
+  private static final Map<String, Set<String>> INDEXED_PROJECTIONS =
+      Collections.singletonMap("timestamp", new HashSet<>(Arrays.asList("timestamp", "name")));
+
+  private CommentJson() {}
+
+  /**
+   * Parse a comma separated list of comment fields.
+   *
+   * @param fields The list from the request, or null for every field.
+   * @return the requested fields in the order they are written.
+   * @throws IllegalArgumentException if a field is not a field of a comment.
+   */
+  static Set<String> parseFields(String fields) {
+    if (fields == null) {
+      return ALL_FIELDS;
+    }
+
+    List<String> requested = Arrays.asList(fields.split("\\s*,\\s*"));
+    for (String field : requested) {
+      if (!ALL_FIELDS.contains(field)) {
+        throw new IllegalArgumentException("Unknown comment field: " + field);
+      }
+    }
+    Set<String> parsed = new LinkedHashSet<>(ALL_FIELDS);
+    parsed.retainAll(requested);
+    return parsed;
+  }
+
+  /**
+   * Turn a query for whole comment entities into a projection query that only reads the
+   * properties behind the requested fields, if the datastore has an index for them. The id
+   * comes from the key so it is always there.
+   *
+   * @param query The query for "Comment" entities.
+   * @param fields The requested fields.
+   * @param sortBy The property the query sorts by, which is always projected.
+   */
+  static void addProjections(Query query, Set<String> fields, String sortBy) {
+    if (fields.containsAll(ALL_FIELDS)) {
+      return;
+    }
+
+    Set<String> properties = new LinkedHashSet<>();
+    for (String field : fields) {
+      if (!field.equals("id")) {
+        properties.add(getDatastoreProperty(field));
+      }
+    }
+    properties.add(sortBy);
+
+    // A projection on just the sort property is answered from its built-in index.
+    if (properties.size() > 1 && !properties.equals(INDEXED_PROJECTIONS.get(sortBy))) {
+      return;
+    }
+    for (String property : properties) {
+      query.addProjection(new PropertyProjection(property, getDatastoreType(property)));
+    }
+  }
+
+  /**
+   * Write one comment with only the requested fields.
+   *
+   * @param writer The writer for the response.
+   * @param comment The comment to write.
+   * @param fields The requested fields.
+   * @throws IOException if the response could not be written.
+   */
+  static void writeComment(JsonWriter writer, Comment comment, Set<String> fields)
+      throws IOException {
+    writer.beginObject();
+    if (fields.contains("id")) {
+      writer.name("id").value(comment.getId());
+    }
+    if (fields.contains("name") && comment.getName() != null) {
+      writer.name("name").value(comment.getName());
+    }
+    if (fields.contains("email") && comment.getEmail() != null) {
+      writer.name("email").value(comment.getEmail());
+    }
+    if (fields.contains("message") && comment.getMessage() != null) {
+      writer.name("message").value(comment.getMessage());
+    }
+    if (fields.contains("sentimentScore")) {
+      // Written as a Float so it is formatted the same way Gson formats the field.
+      writer.name("sentimentScore").value(Float.valueOf(comment.getSentimentScore()));
+    }
+    if (fields.contains("timestamp")) {
+      writer.name("timestamp").value(comment.getTimestamp());
+    }
+    writer.endObject();
+  }
+
+  /**
+   * Write a page of comments that is already in memory.
+   *
+   * @param writer The writer for the response.
+   * @param page The page of comments.
+   * @param fields The requested fields.
+   * @throws IOException if the response could not be written.
+   */
+  static void writePage(JsonWriter writer, CommentPage page, Set<String> fields)
+      throws IOException {
+    writer.beginObject();
+    writer.name("comments").beginArray();
+    for (Comment comment : page.getComments()) {
+      writeComment(writer, comment, fields);
+    }
+    writer.endArray();
+    if (page.getNextPageToken() != null) {
+      writer.name("nextPageToken").value(page.getNextPageToken());
+    }
+    writer.endObject();
+  }
+
+  private static String getDatastoreProperty(String field) {
+    return field.equals("sentimentScore") ? "score" : field;
+  }
+
+  private static Class<?> getDatastoreType(String property) {
+    if (property.equals("score")) {
+      return Double.class;
+    } else if (property.equals("timestamp")) {
+      return Long.class;
+    } else {
+      return String.class;
+    }
+  }
+}
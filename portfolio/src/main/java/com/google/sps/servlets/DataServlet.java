@@ -15,64 +15,112 @@
 package com.google.sps.servlets;
 
 import com.google.sps.data.Comment;
+import com.google.sps.data.CommentPage;
+import com.google.sps.data.CommentViews;
+import com.google.sps.data.CommentsVersion;
+import com.google.sps.moderation.ModerationQueue;
+import com.google.sps.moderation.PendingCommentWriter;
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
 import com.google.appengine.api.datastore.FetchOptions;
-import com.google.appengine.api.datastore.QueryResultList;
-import com.google.cloud.language.v1.Document;
-import com.google.cloud.language.v1.LanguageServiceClient;
-import com.google.cloud.language.v1.Sentiment;
+import com.google.appengine.api.datastore.QueryResultIterator;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 
 /** Servlet that handles sending and receiving comments.*/
 @WebServlet("/data")
 public class DataServlet extends HttpServlet {
   private static final DatastoreService DATASTORE = DatastoreServiceFactory.getDatastoreService();
   private static final UserService USER = UserServiceFactory.getUserService();
-  private static final Gson GSON = new Gson();
   private static final String COMMENTS_URL = "/?section=comments";
+  private static final int MAX_COMMENTS_PER_PAGE = 50;
+  private static final String OFFSET_TOKEN_PREFIX = "offset:";
+  private static final CommentViews VIEWS = CommentViews.getInstance();
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     // Get filter parameters.
     int maxComments = getNumComments(request);
+    String sortBy = getSortProperty(request);
+    SortDirection direction = getSortDirection(request);
+    String pageToken = getParameter(request, "page-token", null);
 
-    Query query = makeQueryFromParams(request);
-    PreparedQuery preparedQuery = DATASTORE.prepare(query);
-    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(maxComments);
-    QueryResultList<Entity> results = preparedQuery.asQueryResultList(fetchOptions);
-
-    ArrayList<Comment> comments = new ArrayList<>();
-    for (Entity entity: results) {
-      long id = entity.getKey().getId();
-      String name = (String) entity.getProperty("name");
-      String email = (String) entity.getProperty("email");
-      String message = (String) entity.getProperty("message");
-      float score = ((Double) entity.getProperty("score")).floatValue();
-      long timestamp = (long) entity.getProperty("timestamp");
-
-      Comment comment = new Comment(id, name, email, message, score, timestamp);
-      comments.add(comment);
+    Set<String> fields;
+    try {
+      fields = CommentJson.parseFields(getParameter(request, "fields", null));
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+
+    // Answer from the client's copy if no comments were published or deleted since it got it.
+    long version = CommentsVersion.get();
+    String etag = makeETag(version, sortBy, direction, maxComments, pageToken, fields);
+    if (HttpCaching.isNotModified(request, etag, version)) {
+      HttpCaching.setValidators(response, etag, version);
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
     }
 
-    // Convert comments list to JSON.
-    String json = GSON.toJson(comments);
+    // Pages served from the in-memory views hand out offset tokens, pages served from the
+    // datastore hand out cursors. Offsets never go past the views, so the datastore never
+    // skips more than CommentViews.CAPACITY comments. A cursor that decodes but does not belong
+    // to this query is only rejected when the query runs, so the query is started before the
+    // response is written.
+    FetchOptions fetchOptions;
+    CommentPage page = null;
+    QueryResultIterator<Entity> results = null;
+    try {
+      if (pageToken == null || pageToken.startsWith(OFFSET_TOKEN_PREFIX)) {
+        int offset = 0;
+        if (pageToken != null) {
+          offset = Integer.parseInt(pageToken.substring(OFFSET_TOKEN_PREFIX.length()));
+          if (offset < 0 || offset > CommentViews.CAPACITY) {
+            throw new IllegalArgumentException("Offset out of range: " + offset);
+          }
+        }
+        fetchOptions = FetchOptions.Builder.withOffset(offset);
+        page = getPageFromViews(sortBy, direction, version, offset, maxComments);
+      } else {
+        Cursor cursor = Cursor.fromWebSafeString(pageToken);
+        fetchOptions = FetchOptions.Builder.withStartCursor(cursor);
+      }
+      if (page == null) {
+        results = queryPage(sortBy, direction, fetchOptions, maxComments, fields);
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println("Could not decode page token: " + pageToken);
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid page token.");
+      return;
+    }
 
-    // Send json to server.
+    // Write the page of comments as JSON straight to the response.
     response.setContentType("applications/json;");
-    response.getWriter().println(json);
+    HttpCaching.setValidators(response, etag, version);
+    JsonWriter writer = new JsonWriter(response.getWriter());
+    if (page != null) {
+      CommentJson.writePage(writer, page, fields);
+    } else {
+      writePageFromDatastore(results, maxComments, fields, writer);
+    }
+    writer.flush();
   }
 
   @Override
@@ -101,97 +149,205 @@ public class DataServlet extends HttpServlet {
       return;
     }
 
-    float score = getSentimentScore(message);
-    if (score <= -0.3) {
-      queryString += "false&reason=score";
-      url = createRedirectURL(request, queryString);
-      response.sendRedirect(url);
+    Entity pendingCommentEntity = createPendingCommentEntity(name, email, message, timestamp);
+
+    // Add the pending comment to DATASTORE and queue it to be scored and published.
+    Key key;
+    try {
+      key = PendingCommentWriter.getInstance().write(pendingCommentEntity);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      response.sendRedirect(createRedirectURL(request, queryString + "false"));
       return;
     }
-    
-    Entity commentEntity = createCommentEntity(name, email, message, score, timestamp);
-    
-    // Add comment entity to DATASTORE.
-    DatastoreService DATASTORE = DatastoreServiceFactory.getDatastoreService();
-    DATASTORE.put(commentEntity);
+    try {
+      ModerationQueue.getInstance().submit(Collections.singletonList(key));
+    } catch (RuntimeException e) {
+      // The comment is stored, and the cron job queues it for moderation again later.
+      System.err.println("Could not queue comment for moderation: " + key + ": " + e);
+    }
 
     // Redirect back to the comments page.
-    queryString += "true";
+    queryString += "pending";
     url = createRedirectURL(request, queryString);
     response.sendRedirect(url);
   }
 
   /**
-   * Construct the query that retrieves comments from the datastore
-   * using the parameters from the request.
+   * Get a page of comments from the in-memory views, loading the view for the sort order
+   * from the datastore if the page falls within the top comments but the view is not loaded
+   * at the given version. The page is then at least as new as that version, so it can be
+   * served with an entity tag made from it. A page that ends past the views is left to the
+   * datastore, which hands out a cursor for the page after it.
    *
-   * @param request The HTTP request that contains all the parameters.
-   * @return a Query object that will be used to query the datastore.
+   * @param sortBy The datastore property the comments are sorted by.
+   * @param direction The direction the comments are sorted in.
+   * @param version The version of the published comments read before the page.
+   * @param offset The position of the first comment on the page.
+   * @param maxComments The number of comments on the page.
+   * @return the page of comments, or null if the page cannot be served from the views.
+   */
+  static CommentPage getPageFromViews(
+      String sortBy, SortDirection direction, long version, int offset, int maxComments) {
+    // One extra comment is read past the end of the page, so if it exists there is a next page.
+    if (offset + maxComments + 1 > CommentViews.CAPACITY) {
+      return null;
+    }
+    List<Comment> comments = VIEWS.getPage(sortBy, direction, version, offset, maxComments + 1);
+    if (comments == null) {
+      Query query = makeQuery(sortBy, direction);
+      FetchOptions fetchOptions = FetchOptions.Builder.withLimit(CommentViews.CAPACITY + 1);
+      List<Comment> topComments = new ArrayList<>();
+      for (Entity entity : DATASTORE.prepare(query).asIterable(fetchOptions)) {
+        topComments.add(Comment.fromEntity(entity));
+      }
+      VIEWS.load(sortBy, direction, version, topComments);
+
+      // Slice the page from the comments just read, since another request may have
+      // invalidated the views since they were loaded.
+      int start = Math.min(offset, topComments.size());
+      int end = Math.min(offset + maxComments + 1, topComments.size());
+      comments = new ArrayList<>(topComments.subList(start, end));
+    }
+
+    String nextPageToken = null;
+    if (comments.size() > maxComments) {
+      comments.remove(maxComments);
+      nextPageToken = OFFSET_TOKEN_PREFIX + (offset + maxComments);
+    }
+    return new CommentPage(comments, nextPageToken);
+  }
+
+  /**
+   * Start a datastore query for a page of comments. If only some fields are requested then
+   * only their properties are read with a projection query.
+   *
+   * @param sortBy The datastore property the comments are sorted by.
+   * @param direction The direction the comments are sorted in.
+   * @param fetchOptions The fetch options that say where the page starts.
+   * @param maxComments The number of comments on the page.
+   * @param fields The comment fields to read.
+   * @return the results, with one comment past the end of the page if there is a next page.
+   * @throws IllegalArgumentException if the start cursor does not belong to the query.
    */
-  private Query makeQueryFromParams(HttpServletRequest request) {
+  private QueryResultIterator<Entity> queryPage(String sortBy, SortDirection direction,
+      FetchOptions fetchOptions, int maxComments, Set<String> fields) {
+    Query query = makeQuery(sortBy, direction);
+    CommentJson.addProjections(query, fields, sortBy);
+    PreparedQuery preparedQuery = DATASTORE.prepare(query);
+    return preparedQuery.asQueryResultIterator(
+        fetchOptions.limit(maxComments + 1).chunkSize(maxComments + 1));
+  }
+
+  /**
+   * Write a page of comments from the datastore as each one is read, so the page is never
+   * held in memory. The JSON has the same shape as a CommentPage.
+   *
+   * @param results The results of the query for the page.
+   * @param maxComments The number of comments on the page.
+   * @param fields The comment fields to write.
+   * @param writer The writer for the response.
+   * @throws IOException if the response could not be written.
+   */
+  private void writePageFromDatastore(QueryResultIterator<Entity> results, int maxComments,
+      Set<String> fields, JsonWriter writer) throws IOException {
+    writer.beginObject();
+    writer.name("comments").beginArray();
+    int numComments = 0;
+    while (numComments < maxComments && results.hasNext()) {
+      CommentJson.writeComment(writer, Comment.fromEntity(results.next()), fields);
+      numComments++;
+    }
+    writer.endArray();
+
+    // One extra comment is fetched past the end of the page, so if it exists there is a next page.
+    if (results.hasNext()) {
+      writer.name("nextPageToken").value(results.getCursor().toWebSafeString());
+    }
+    writer.endObject();
+  }
+
+  /**
+   * Make a strong entity tag for one page of comments at one version of the comments.
+   *
+   * @param version The version of the published comments.
+   * @param sortBy The datastore property the comments are sorted by.
+   * @param direction The direction the comments are sorted in.
+   * @param maxComments The number of comments on the page.
+   * @param pageToken The token for the page, or null for the first page.
+   * @param fields The comment fields written.
+   * @return the quoted entity tag.
+   */
+  private String makeETag(long version, String sortBy, SortDirection direction,
+      int maxComments, String pageToken, Set<String> fields) {
+    int variant = Objects.hash(sortBy, direction, maxComments, pageToken, fields);
+    return "\"" + Long.toHexString(version) + "-" + Integer.toHexString(variant) + "\"";
+  }
+
+  /**
+   * Get the datastore property to sort the comments by from the request parameter.
+   *
+   * @param request The HTTP request object.
+   * @return the name of the property, or "timestamp" if the parameter was not specified.
+   */
+  static String getSortProperty(HttpServletRequest request) {
     String sortValue = getParameter(request, "sort-value", "date");
-    String sortOrder = getParameter(request, "sort-order", "descending");
 
-    String sortBy;
     if (sortValue.equals("name")) {
-      sortBy = "name";
+      return "name";
     } else if (sortValue.equals("email")) {
-      sortBy = "email";
+      return "email";
     } else if (sortValue.equals("sentimentScore")) {
-     sortBy = "score";
+      return "score";
     } else {
-      sortBy = "timestamp";
+      return "timestamp";
     }
+  }
+
+  /**
+   * Get the direction to sort the comments in from the request parameter.
+   *
+   * @param request The HTTP request object.
+   * @return the sort direction, or descending if the parameter was not specified.
+   */
+  static SortDirection getSortDirection(HttpServletRequest request) {
+    String sortOrder = getParameter(request, "sort-order", "descending");
 
     if (sortOrder.equals("ascending")) {
-      return new Query("Comment").addSort(sortBy, SortDirection.ASCENDING);
+      return SortDirection.ASCENDING;
     } else {
-      return new Query("Comment").addSort(sortBy, SortDirection.DESCENDING);
+      return SortDirection.DESCENDING;
     }
   }
 
   /**
+   * Construct the query that retrieves comments from the datastore in the given order.
    *
-   * Create an entity to insert into datastore
+   * @param sortBy The datastore property the comments are sorted by.
+   * @param direction The direction the comments are sorted in.
+   * @return a Query object that will be used to query the datastore.
+   */
+  static Query makeQuery(String sortBy, SortDirection direction) {
+    return new Query("Comment").addSort(sortBy, direction);
+  }
+
+  /**
+   * Create a pending comment entity to insert into datastore.
    *
    * @param name The name of the user that commented.
    * @param email The email of the user that commented.
    * @param message The message the user left.
-   * @param score The sentiment score of the message.
    * @param timestamp The time the user made the comment.
    * @return an entity that can be put into the datastore containing
-   * the comment information.
-   */
-
-  private Entity createCommentEntity(String name, String email, String message, float score, long timestamp) {
-    Entity commentEntity = new Entity("Comment");
-    commentEntity.setProperty("name", name);
-    commentEntity.setProperty("email", email);
-    commentEntity.setProperty("message", message);
-    commentEntity.setProperty("score", score);
-    commentEntity.setProperty("timestamp", timestamp);
-    return commentEntity;
-  }
-
-  /**
-   * Generate and return the sentiment score of the given message.
-   *
-   * @param message The comment the user made that will be analyzed.
-   * @return The sentiment score that was given to the comment.
+   * the comment information until it has been moderated.
    */
-  private float getSentimentScore(String message) {
-    try {
-      Document doc =
-                Document.newBuilder().setContent(message).setType(Document.Type.PLAIN_TEXT).build();
-      LanguageServiceClient languageService = LanguageServiceClient.create();
-      Sentiment sentiment = languageService.analyzeSentiment(doc).getDocumentSentiment();
-      float score = sentiment.getScore();
-      languageService.close();
-      return score;
-    } catch (IOException e) {
-      System.out.println("This error ocurred getting the sentiment score:" + e);
-      return -1f;
-    }
+  private Entity createPendingCommentEntity(String name, String email, String message, long timestamp) {
+    Entity pendingCommentEntity = new Entity("PendingComment");
+    pendingCommentEntity.setProperty("name", name);
+    pendingCommentEntity.setProperty("email", email);
+    pendingCommentEntity.setProperty("message", message);
+    pendingCommentEntity.setProperty("timestamp", timestamp);
+    return pendingCommentEntity;
   }
 
   /**
@@ -203,7 +359,8 @@ public class DataServlet extends HttpServlet {
    * @return the request parameter, or the default value if the parameter
    * was not specified by the client as a string or null.
    */
-  private String getParameter(HttpServletRequest request, String name, String defaultValue) {
+  private static String getParameter(
+      HttpServletRequest request, String name, String defaultValue) {
     String value = request.getParameter(name);
     if (value != null) {
       value = value.trim();
@@ -238,9 +395,9 @@ public class DataServlet extends HttpServlet {
    *
    * @param request The HTTP request object.
    * @return the number of comments in the request paramter, or 5 if the 
-   * parameter was not specified by the client.
+   * parameter was not specified by the client. The number is capped at MAX_COMMENTS_PER_PAGE.
    */
-  private int getNumComments(HttpServletRequest request) {
+  static int getNumComments(HttpServletRequest request) {
     String numCommentsString = request.getParameter("num-comments");
 
     // Convert parameter to int.
@@ -258,6 +415,12 @@ public class DataServlet extends HttpServlet {
       return 1;
     }
 
+    // Check that the page is not too large to keep the response size bounded.
+    if (numComments > MAX_COMMENTS_PER_PAGE) {
+      System.err.println("Number of comments is too high: " + numCommentsString);
+      return MAX_COMMENTS_PER_PAGE;
+    }
+
     return numComments;
   }
 }
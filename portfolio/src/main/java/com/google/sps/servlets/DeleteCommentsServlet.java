@@ -14,31 +14,154 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
+import com.google.sps.data.CommentStatsCounters;
+import com.google.sps.data.CommentViews;
+import com.google.sps.data.CommentsVersion;
+import com.google.sps.data.DeleteProgress;
+import com.google.sps.search.CommentIndex;
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.gson.Gson;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Servlet responsible for deleting all comments. */
+/**
+ * Servlet responsible for deleting all comments.
+ *
+ * <p>Comments are deleted with keys-only queries in chunks of the largest batch the datastore
+ * accepts, with several chunks deleted in parallel. If the request runs out of time before
+ * every comment is deleted, it returns a resume token that the client sends back to carry on
+ * where it stopped.
+ */
 @WebServlet("/delete-comments")
 public class DeleteCommentsServlet extends HttpServlet {
-  private static final Query QUERY = new Query("Comment");
-  private static final DatastoreService DATASTORE = DatastoreServiceFactory.getDatastoreService();
-  
+  private static final AsyncDatastoreService DATASTORE =
+      DatastoreServiceFactory.getAsyncDatastoreService();
+  private static final Gson GSON = new Gson();
+
+  /** The kinds that are deleted, in the order they are deleted. */
+  private static final String[] KINDS = {"PendingComment", "Comment"};
+
+  /** The maximum number of keys the datastore deletes in one batch. */
+  private static final int CHUNK_SIZE = 500;
+  private static final int PARALLEL_CHUNKS = 4;
+
+  /** The time spent deleting before returning, well inside the request deadline. */
+  private static final long TIME_BUDGET_MILLIS = 30 * 1000;
+
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    PreparedQuery results = DATASTORE.prepare(QUERY);
+    long deadline = System.currentTimeMillis() + TIME_BUDGET_MILLIS;
 
-    for(Entity entity : results.asIterable()) {
-      DATASTORE.delete(entity.getKey());
+    // The resume token is the index of the kind being deleted and the cursor within it.
+    int kindIndex = 0;
+    Cursor cursor = null;
+    String resumeToken = request.getParameter("resume-token");
+    if (resumeToken != null && !resumeToken.isEmpty()) {
+      try {
+        int separator = resumeToken.indexOf(':');
+        kindIndex = Integer.parseInt(resumeToken.substring(0, separator));
+        if (kindIndex < 0 || kindIndex >= KINDS.length) {
+          throw new IllegalArgumentException("No kind at index " + kindIndex);
+        }
+        String webSafeCursor = resumeToken.substring(separator + 1);
+        if (!webSafeCursor.isEmpty()) {
+          cursor = Cursor.fromWebSafeString(webSafeCursor);
+        }
+      } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+        System.err.println("Could not decode resume token: " + resumeToken);
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid resume token.");
+        return;
+      }
     }
 
-    response.sendRedirect("/comments.html?deleted=true");
+    long deleted = 0;
+    while (kindIndex < KINDS.length && System.currentTimeMillis() < deadline) {
+      Query query = new Query(KINDS[kindIndex]).setKeysOnly();
+      FetchOptions fetchOptions = FetchOptions.Builder.withLimit(CHUNK_SIZE * PARALLEL_CHUNKS);
+      if (cursor != null) {
+        fetchOptions.startCursor(cursor);
+      }
+      QueryResultList<Entity> results;
+      try {
+        results = DATASTORE.prepare(query).asQueryResultList(fetchOptions);
+      } catch (IllegalArgumentException e) {
+        // Only a cursor from the resume token can be rejected, before anything is deleted.
+        System.err.println("Could not resume from token: " + resumeToken);
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid resume token.");
+        return;
+      }
+
+      deleteInChunks(results);
+      deleted += results.size();
+
+      if (results.size() < CHUNK_SIZE * PARALLEL_CHUNKS) {
+        kindIndex++;
+        cursor = null;
+      } else {
+        cursor = results.getCursor();
+      }
+    }
+
+    // The cached top comments and the search index now hold deleted comments. The statistics
+    // are counted again from scratch once every comment is gone.
+    CommentViews.getInstance().invalidate();
+    CommentIndex.getInstance().clear();
+    if (kindIndex == KINDS.length) {
+      CommentStatsCounters.reset();
+    }
+    CommentsVersion.bump();
+
+    DeleteProgress progress;
+    if (kindIndex < KINDS.length) {
+      String nextResumeToken = kindIndex + ":" + (cursor == null ? "" : cursor.toWebSafeString());
+      progress = new DeleteProgress(deleted, false, nextResumeToken);
+    } else {
+      progress = new DeleteProgress(deleted, true, null);
+    }
+
+    response.setContentType("application/json;");
+    response.getWriter().println(GSON.toJson(progress));
+  }
+
+  /**
+   * Delete the keys of the given entities, sending each chunk as a separate batch in parallel.
+   *
+   * @param entities The keys-only entities to delete.
+   * @throws IOException if any of the batches failed.
+   */
+  private void deleteInChunks(List<Entity> entities) throws IOException {
+    List<Future<Void>> deletes = new ArrayList<>();
+    for (int start = 0; start < entities.size(); start += CHUNK_SIZE) {
+      List<Key> keys = new ArrayList<>(CHUNK_SIZE);
+      for (Entity entity : entities.subList(start, Math.min(start + CHUNK_SIZE, entities.size()))) {
+        keys.add(entity.getKey());
+      }
+      deletes.add(DATASTORE.delete(keys));
+    }
+
+    try {
+      for (Future<Void> delete : deletes) {
+        delete.get();
+      }
+    } catch (ExecutionException e) {
+      throw new IOException("Could not delete comments.", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while deleting comments.", e);
+    }
   }
 }
@@ -0,0 +1,76 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Helpers for answering conditional GET requests with 304 Not Modified. */
+final class HttpCaching {
+
+  private HttpCaching() {}
+
+  /**
+   * Set the validators for a response that clients must check with the server before reusing.
+   *
+   * @param response The HTTP response object.
+   * @param etag The quoted entity tag of the response.
+   * @param lastModified The time the response last changed in milliseconds, or -1 if unknown.
+   */
+  static void setValidators(HttpServletResponse response, String etag, long lastModified) {
+    response.setHeader("Cache-Control", "no-cache");
+    response.setHeader("ETag", etag);
+    if (lastModified >= 0) {
+      response.setDateHeader("Last-Modified", lastModified);
+    }
+  }
+
+  /**
+   * Check if the client already has the current response. If-None-Match takes precedence over
+   * If-Modified-Since as required by RFC 7232.
+   *
+   * @param request The HTTP request object.
+   * @param etag The quoted entity tag of the current response.
+   * @param lastModified The time the response last changed in milliseconds, or -1 if unknown.
+   * @return whether the server can answer with 304 Not Modified.
+   */
+  static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+        if (tag.equals("*") || tag.equals(etag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    if (lastModified < 0) {
+      return false;
+    }
+    long ifModifiedSince;
+    try {
+      ifModifiedSince = request.getDateHeader("If-Modified-Since");
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+    // HTTP dates only have second precision.
+    return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+  }
+}
@@ -0,0 +1,97 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Comment;
+import com.google.sps.live.CommentFeed;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.servlet.AsyncContext;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that answers long polls for comments published after the time the client sends,
+ * holding the request until there are some or the poll times out. The "seen" parameter lists
+ * the ids of comments the client got within CommentFeed.CATCH_UP_MARGIN_MILLIS of that time.
+ */
+@WebServlet(urlPatterns = "/comments/live", asyncSupported = true)
+public class LiveFeedServlet extends HttpServlet {
+  private static final DatastoreService DATASTORE = DatastoreServiceFactory.getDatastoreService();
+  private static final int MAX_COMMENTS = 50;
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // A client without a publish time only wants comments published from now on.
+    long since = System.currentTimeMillis();
+    Set<Long> seen = new HashSet<>();
+    String sinceParameter = request.getParameter("since");
+    try {
+      if (sinceParameter != null) {
+        since = Long.parseLong(sinceParameter);
+      }
+      String seenParameter = request.getParameter("seen");
+      if (seenParameter != null && !seenParameter.isEmpty()) {
+        for (String id : seenParameter.split(",")) {
+          seen.add(Long.parseLong(id));
+        }
+      }
+    } catch (NumberFormatException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid publish time or ids.");
+      return;
+    }
+
+    response.setContentType("application/json;");
+    response.setHeader("Cache-Control", "no-cache");
+
+    // The request thread goes back to the container while the poll waits.
+    AsyncContext context = request.startAsync();
+    CommentFeed.Poll poll = CommentFeed.getInstance().hold(context, since);
+
+    // Comments published on other instances, or before the client polled again, are only in
+    // the datastore. If there are more than fit in one answer the client gets the rest at once.
+    // A first poll has nothing to catch up on, since the page it came from was just loaded.
+    long catchUpFrom = sinceParameter != null ? since - CommentFeed.CATCH_UP_MARGIN_MILLIS : since;
+    Query query = new Query("Comment")
+        .setFilter(new FilterPredicate("publishedAt", FilterOperator.GREATER_THAN, catchUpFrom))
+        .addSort("publishedAt", SortDirection.ASCENDING);
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(MAX_COMMENTS + seen.size());
+    List<Comment> comments = new ArrayList<>();
+    long publishedAt = since;
+    for (Entity entity : DATASTORE.prepare(query).asIterable(fetchOptions)) {
+      publishedAt = Math.max(publishedAt, (Long) entity.getProperty("publishedAt"));
+      if (!seen.contains(entity.getKey().getId())) {
+        comments.add(Comment.fromEntity(entity));
+      }
+    }
+    if (!comments.isEmpty()) {
+      poll.answer(comments, publishedAt);
+    }
+  }
+}
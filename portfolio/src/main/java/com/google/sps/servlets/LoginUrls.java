@@ -0,0 +1,80 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Login and logout URLs that send the user back to the comments section.
+ *
+ * <p>The URLs only depend on the host the app was reached through, so each one is created
+ * once per host instead of calling the users service on every request. The host comes from the
+ * client, so only the most recently used hosts are kept.
+ */
+final class LoginUrls {
+  private static final UserService USER = UserServiceFactory.getUserService();
+  private static final String COMMENTS_URL = "/?section=comments";
+  private static final int MAX_HOSTS = 16;
+
+  private static final Map<String, String> LOGIN_URLS = newHostCache();
+  private static final Map<String, String> LOGOUT_URLS = newHostCache();
+
+  private LoginUrls() {}
+
+  /**
+   * Get the URL the user follows to log in or out, depending on whether they are logged in.
+   *
+   * @param request The HTTP request object.
+   * @param loggedIn Whether the user is logged in.
+   * @return the URL that returns the user to the comments section afterwards.
+   */
+  static String get(HttpServletRequest request, boolean loggedIn) {
+    String host = request.getServerName();
+    if (loggedIn) {
+      return getCached(LOGOUT_URLS, host, () -> USER.createLogoutURL(COMMENTS_URL));
+    } else {
+      return getCached(LOGIN_URLS, host, () -> USER.createLoginURL(COMMENTS_URL));
+    }
+  }
+
+  private static String getCached(Map<String, String> urls, String host, Supplier<String> create) {
+    synchronized (urls) {
+      String url = urls.get(host);
+      if (url != null) {
+        return url;
+      }
+    }
+    // The users service is called outside the lock, so a slow call does not hold up other hosts.
+    String url = create.get();
+    synchronized (urls) {
+      urls.put(host, url);
+    }
+    return url;
+  }
+
+  private static Map<String, String> newHostCache() {
+    return new LinkedHashMap<String, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > MAX_HOSTS;
+      }
+    };
+  }
+}
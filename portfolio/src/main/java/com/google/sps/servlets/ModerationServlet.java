@@ -0,0 +1,77 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.moderation.ModerationQueue;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that moderates pending comments for the "moderation" task queue, and queues stale
+ * pending comments again for the cron job in cron.xml.
+ *
+ * <p>App Engine removes the X-AppEngine-QueueName and X-Appengine-Cron headers from outside
+ * requests, so only the task queue and cron can call this servlet.
+ */
+@WebServlet("/moderate")
+public class ModerationServlet extends HttpServlet {
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!"true".equals(request.getHeader("X-Appengine-Cron"))) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    int queued = ModerationQueue.getInstance().submitStale();
+    if (queued > 0) {
+      System.err.println("Queued " + queued + " stale pending comments for moderation again.");
+    }
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (request.getHeader("X-AppEngine-QueueName") == null) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    List<Key> keys = new ArrayList<>();
+    String[] values = request.getParameterValues(ModerationQueue.KEY_PARAMETER);
+    for (String value : values == null ? new String[0] : values) {
+      try {
+        keys.add(KeyFactory.stringToKey(value));
+      } catch (IllegalArgumentException e) {
+        // Retrying would not help, so the key is dropped.
+        System.err.println("Could not decode pending comment key: " + value);
+      }
+    }
+
+    // The task queue retries the task if any comment could not be moderated. Comments that
+    // were moderated are skipped on the retry since their pending entities are gone.
+    List<Key> failed = ModerationQueue.getInstance().moderate(keys);
+    if (!failed.isEmpty()) {
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+          "Could not moderate " + failed.size() + " comments.");
+    }
+  }
+}
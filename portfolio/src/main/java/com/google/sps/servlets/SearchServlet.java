@@ -0,0 +1,119 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentPage;
+import com.google.sps.search.CommentIndex;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that searches the published comments for the words in the "q" parameter.
+ *
+ * <p>The matching ids come from the in-memory index and only the comments on the returned
+ * page are read from the datastore. The response has the same shape as a page from /data
+ * and accepts the same "fields" parameter.
+ */
+@WebServlet("/comments/search")
+public class SearchServlet extends HttpServlet {
+  private static final DatastoreService DATASTORE = DatastoreServiceFactory.getDatastoreService();
+  private static final int DEFAULT_COMMENTS_PER_PAGE = 10;
+  private static final int MAX_COMMENTS_PER_PAGE = 50;
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String query = request.getParameter("q");
+    if (query == null || query.trim().isEmpty()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing search query.");
+      return;
+    }
+
+    int maxComments;
+    long afterId;
+    Set<String> fields;
+    try {
+      maxComments = getNumComments(request);
+      String pageToken = request.getParameter("page-token");
+      afterId = pageToken == null || pageToken.isEmpty() ? 0 : Long.parseLong(pageToken);
+      fields = CommentJson.parseFields(request.getParameter("fields"));
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+
+    // One extra id is found past the end of the page, so if it exists there is a next page.
+    List<Long> ids;
+    try {
+      ids = CommentIndex.getInstance().search(query, afterId, maxComments + 1);
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+    String nextPageToken = null;
+    if (ids.size() > maxComments) {
+      ids = ids.subList(0, maxComments);
+      nextPageToken = Long.toString(ids.get(maxComments - 1));
+    }
+
+    List<Key> keys = new ArrayList<>();
+    for (long id : ids) {
+      keys.add(KeyFactory.createKey("Comment", id));
+    }
+    Map<Key, Entity> entities = DATASTORE.get(keys);
+
+    // Comments deleted since they were indexed are left out of the page.
+    List<Comment> comments = new ArrayList<>();
+    for (Key key : keys) {
+      Entity entity = entities.get(key);
+      if (entity != null) {
+        comments.add(Comment.fromEntity(entity));
+      }
+    }
+
+    response.setContentType("application/json;");
+    JsonWriter writer = new JsonWriter(response.getWriter());
+    CommentJson.writePage(writer, new CommentPage(comments, nextPageToken), fields);
+    writer.flush();
+  }
+
+  /**
+   * Get the number of comments to return from the "num-comments" parameter.
+   *
+   * @param request The request made by the client.
+   * @return the number of comments on a page, between 1 and MAX_COMMENTS_PER_PAGE.
+   * @throws NumberFormatException if the parameter is not a number.
+   */
+  private int getNumComments(HttpServletRequest request) {
+    String numComments = request.getParameter("num-comments");
+    if (numComments == null || numComments.isEmpty()) {
+      return DEFAULT_COMMENTS_PER_PAGE;
+    }
+    return Math.max(1, Math.min(MAX_COMMENTS_PER_PAGE, Integer.parseInt(numComments)));
+  }
+}
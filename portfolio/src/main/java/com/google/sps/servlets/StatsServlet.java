@@ -0,0 +1,45 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.CommentStatsCounters;
+import com.google.sps.data.CommentsVersion;
+import com.google.gson.Gson;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Servlet that returns the number of comments and the distribution of their scores. */
+@WebServlet("/comments/stats")
+public class StatsServlet extends HttpServlet {
+  private static final Gson GSON = new Gson();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // The statistics only change when the published comments do.
+    long version = CommentsVersion.get();
+    String etag = "\"stats-" + Long.toHexString(version) + "\"";
+    HttpCaching.setValidators(response, etag, version);
+    if (HttpCaching.isNotModified(request, etag, version)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    response.setContentType("application/json;");
+    response.getWriter().println(GSON.toJson(CommentStatsCounters.read()));
+  }
+}
@@ -28,22 +28,22 @@ import com.google.gson.Gson;
 public class UserServlet extends HttpServlet {
   private static final UserService USER = UserServiceFactory.getUserService();
   private static final Gson GSON = new Gson();
-  private static final String COMMENTS_URL = "/?section=comments";
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     response.setContentType("applications/json;");
-    String urlToRedirectTo = COMMENTS_URL;
-    UserStatus userStatus;
+    boolean loggedIn = USER.isUserLoggedIn();
+    UserStatus userStatus = new UserStatus(loggedIn, LoginUrls.get(request, loggedIn));
+    String json = GSON.toJson(userStatus);
 
-    if (USER.isUserLoggedIn()) {
-      String logoutUrl = USER.createLogoutURL(urlToRedirectTo);
-      userStatus = new UserStatus(true, logoutUrl);
-    } else {
-      String loginUrl = USER.createLoginURL(urlToRedirectTo);
-      userStatus = new UserStatus(false, loginUrl);
+    // The status is small, so the tag is a hash of the response itself.
+    String etag = "\"" + Integer.toHexString(json.hashCode()) + "\"";
+    response.setHeader("Vary", "Cookie");
+    HttpCaching.setValidators(response, etag, -1);
+    if (HttpCaching.isNotModified(request, etag, -1)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
     }
-    String json = GSON.toJson(userStatus);
     response.getWriter().println(json);
   }
 }
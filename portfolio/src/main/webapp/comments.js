@@ -4,6 +4,11 @@ const USER_DIV = document.getElementById("users");
 const LOG_IN_PROMPT = "Click here to log in: ";
 const LOG_OUT_PROMPT = "Click here to log out: ";
 const COMMENT_ALERT_DIV = document.getElementById("comment-posted-status");
+const LOAD_MORE_BUTTON = document.getElementById("load-more");
+const COMMENT_COUNT = document.getElementById("comment-count");
+
+// The token for the next page of comments, or undefined if there are no more comments.
+let nextPageToken;
 
 function timestampToDate(timestamp) {
   const date = new Date(timestamp);
@@ -43,6 +48,9 @@ function createAlert(type, message) {
     case "failure":
       alertDiv.classList.add("alert-danger");
       break;
+    case "pending":
+      alertDiv.classList.add("alert-info");
+      break;
     default:
       alertDiv.classList.add("alert-warning");
       break;
@@ -65,10 +73,14 @@ function checkCommentPosted() {
     console.log("The comment was posted.");
     const success = createAlert("success", "Your comment was posted!");
     COMMENT_ALERT_DIV.appendChild(success);
+  } else if (posted === "pending") {
+    console.log("The comment is waiting for moderation.");
+    const pending = createAlert("pending", "Your comment was received and will show up once it has been reviewed!");
+    COMMENT_ALERT_DIV.appendChild(pending);
   }
 }
 
-function filterComments() {
+function filterComments(pageToken) {
   const numComments = FILTERS.querySelector("#num-comments").value;
   const sortValue = FILTERS.querySelector("#sort-value").value;
   const sortOrder = FILTERS.querySelector("#sort-order").value;
@@ -77,7 +89,10 @@ function filterComments() {
   params.append("num-comments", numComments);
   params.append("sort-value", sortValue);
   params.append("sort-order", sortOrder);
-  
+  if (pageToken) {
+    params.append("page-token", pageToken);
+  }
+
   const url = `/data?${params.toString()}`;
   return fetch(url);
 }
@@ -91,7 +106,10 @@ function createComment(comment) {
 
   // add the default profile picture and style it.
   const img = document.createElement("IMG");
+  // The 160px copy is big enough for the 64px thumbnail on high density screens.
   img.src = "images/profile_picture.jpg";
+  img.srcset = "images/profile_picture-160.jpg 160w, images/profile_picture.jpg 600w";
+  img.sizes = "64px";
   img.height="64";
   img.width="64";
   img.classList.add("img-fluid");
@@ -124,21 +142,93 @@ function getComments() {
   // Remove comments from page
   removeCommentsFromPage();
 
-  // fetch the data from endpoint to display
-  filterComments()
+  // fetch the first page of comments from endpoint to display
+  fetchPage();
+
+  checkCommentPosted();
+}
+
+function loadMoreComments() {
+  fetchPage(nextPageToken);
+}
+
+function fetchPage(pageToken) {
+  filterComments(pageToken)
   .then(res => res.json())
-  .then((comments) => {
-    console.log("Retrieved comments from server.")
-    console.log(comments);
-    for (i = 0; i < comments.length; ++i) {
-      const comment = createComment(comments[i]);
-      COMMENTS_LIST_DOC_ELEMENT.appendChild(comment);
-    }
-  });
+  .then(showPage);
+}
+
+function showPage(page) {
+  console.log("Retrieved comments from server.")
+  console.log(page);
+  for (i = 0; i < page.comments.length; ++i) {
+    const comment = createComment(page.comments[i]);
+    COMMENTS_LIST_DOC_ELEMENT.appendChild(comment);
+  }
+
+  // Only show the load more button if there is another page.
+  nextPageToken = page.nextPageToken;
+  LOAD_MORE_BUTTON.hidden = !nextPageToken;
+}
 
+function bootstrapComments() {
+  // The login status, first page and comment count all come back in one response.
+  fetch("/comments/bootstrap")
+  .then(res => res.json())
+  .then((bootstrap) => {
+    showUserStatus(bootstrap.user);
+    showPage(bootstrap.page);
+    COMMENT_COUNT.textContent = `${bootstrap.totalComments} comments`;
+    COMMENT_COUNT.hidden = false;
+  });
   checkCommentPosted();
 }
 
+// How far back the live feed looks for comments it has not sent, CommentFeed.CATCH_UP_MARGIN_MILLIS.
+const LIVE_FEED_CATCH_UP_MILLIS = 60 * 1000;
+// The ids of the comments the live feed sent, and the publish time of the answer they came in.
+const liveFeedSeen = new Map();
+
+function listenForNewComments(since) {
+  // The server holds each poll until comments are published or about 50 seconds pass. It also
+  // looks a minute before the publish time for comments stamped early or committed late, and
+  // skips the ones this page got in that minute.
+  const params = new URLSearchParams();
+  if (since) {
+    params.append("since", since);
+    liveFeedSeen.forEach((answeredAt, id) => {
+      if (answeredAt <= since - LIVE_FEED_CATCH_UP_MILLIS) {
+        liveFeedSeen.delete(id);
+      }
+    });
+    params.append("seen", Array.from(liveFeedSeen.keys()).join(","));
+  }
+  fetch(`/comments/live?${params.toString()}`)
+  .then(res => res.json())
+  .then((updates) => {
+    const sortValue = FILTERS.querySelector("#sort-value").value;
+    const sortOrder = FILTERS.querySelector("#sort-order").value;
+
+    // A comment can come in twice if it was published on this instance and found by a query.
+    const comments = updates.comments.filter(comment => !liveFeedSeen.has(comment.id));
+    comments.forEach(comment => liveFeedSeen.set(comment.id, updates.since));
+
+    // Only the newest first order has an obvious place for a new comment: the top.
+    if (sortValue === "date" && sortOrder === "descending") {
+      // Comments arrive oldest first, so the newest ends up on top.
+      comments.forEach((data) => {
+        const comment = createComment(data);
+        COMMENTS_LIST_DOC_ELEMENT.insertBefore(comment, COMMENTS_LIST_DOC_ELEMENT.firstChild);
+      });
+    }
+    listenForNewComments(updates.since);
+  })
+  .catch(() => {
+    // Wait a little before polling again, so a failing server is not flooded.
+    setTimeout(() => listenForNewComments(since), 5000);
+  });
+}
+
 function removeCommentsFromPage() {
   let comments;
   while ((comments = COMMENTS_LIST_DOC_ELEMENT.getElementsByTagName("li")).length > 0) {
@@ -149,26 +239,39 @@ function removeCommentsFromPage() {
 function deleteAllComments() {
   deleteComments = confirm("Are you sure you want to delete all comments? This action is irreversible!");
   if (deleteComments) {
-    fetch("/delete-comments", {method: "POST"});
     removeCommentsFromPage();
-    console.log("Comments deleted.");
+    deleteCommentsFrom(null);
   }
 }
 
-function getUserStatus() {
-  fetch("/user")
+function deleteCommentsFrom(resumeToken) {
+  // Large deletes are split over several requests, each one continuing where the last stopped.
+  const params = new URLSearchParams();
+  if (resumeToken) {
+    params.append("resume-token", resumeToken);
+  }
+  fetch(`/delete-comments?${params.toString()}`, {method: "POST"})
   .then(res => res.json())
-  .then((userStatus) => {
-    if (userStatus.isLoggedIn) {
-      const commentForm = document.querySelector("form");
-      commentForm.removeAttribute("hidden");
-      USER_DIV.firstElementChild.innerHTML = LOG_OUT_PROMPT + "<a href='" + userStatus.url + "'>Log Out</a>";
+  .then((progress) => {
+    console.log(`Deleted ${progress.deleted} comments.`);
+    if (progress.done) {
+      console.log("Comments deleted.");
     } else {
-      USER_DIV.firstElementChild.innerHTML = LOG_IN_PROMPT + "<a href='" + userStatus.url + "'>Log In</a>";
+      deleteCommentsFrom(progress.resumeToken);
     }
   });
 }
 
+function showUserStatus(userStatus) {
+  if (userStatus.isLoggedIn) {
+    const commentForm = document.querySelector("form");
+    commentForm.removeAttribute("hidden");
+    USER_DIV.firstElementChild.innerHTML = LOG_OUT_PROMPT + "<a href='" + userStatus.url + "'>Log Out</a>";
+  } else {
+    USER_DIV.firstElementChild.innerHTML = LOG_IN_PROMPT + "<a href='" + userStatus.url + "'>Log In</a>";
+  }
+}
+
 function navigateToCommentsSection() {
   const url = new URL(window.location.href);
   const section = url.searchParams.get("section");
@@ -190,6 +293,6 @@ function navigateToCommentsSection() {
   }
 }
 
-getComments();
-getUserStatus();
+bootstrapComments();
 navigateToCommentsSection();
+listenForNewComments();
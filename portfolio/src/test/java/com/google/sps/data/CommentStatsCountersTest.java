@@ -0,0 +1,110 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the sharded comment statistics and the backfill that starts them. */
+@RunWith(JUnit4.class)
+public final class CommentStatsCountersTest {
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setApplyAllHighRepJobPolicy(),
+      new LocalMemcacheServiceTestConfig());
+
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void firstReadCountsExistingComments() {
+    putComment(0.5);
+    putComment(-0.5);
+    putComment(1.0);
+
+    CommentStats stats = CommentStatsCounters.read();
+
+    Assert.assertEquals(3, stats.getCount());
+    Assert.assertEquals(1.0 / 3, stats.getMeanScore(), 0.0001);
+  }
+
+  @Test
+  public void writesBeforeTheBackfillAreLeftToIt() {
+    putComment(0.5);
+    CommentStatsCounters.record(Arrays.asList(0.5f));
+
+    Assert.assertEquals(1, CommentStatsCounters.read().getCount());
+  }
+
+  @Test
+  public void writesAfterTheBackfillAreRecorded() {
+    putComment(0.5);
+    Assert.assertEquals(1, CommentStatsCounters.read().getCount());
+
+    putComment(0.25);
+    CommentStatsCounters.record(Arrays.asList(0.25f));
+
+    Assert.assertEquals(2, CommentStatsCounters.read().getCount());
+  }
+
+  @Test
+  public void backfillReplacesShardsWrittenWithoutOne() {
+    Entity legacyShard = new Entity(KeyFactory.createKey("CommentStatsShard", "shard-3"));
+    legacyShard.setUnindexedProperty("count", 7L);
+    datastore.put(legacyShard);
+    putComment(0.5);
+
+    Assert.assertEquals(1, CommentStatsCounters.read().getCount());
+  }
+
+  @Test
+  public void resetCountsAgainFromScratch() {
+    putComment(0.5);
+    CommentStatsCounters.read();
+    CommentStatsCounters.record(Arrays.asList(0.5f));
+
+    CommentStatsCounters.reset();
+
+    Assert.assertEquals(1, CommentStatsCounters.read().getCount());
+  }
+
+  private void putComment(double score) {
+    Entity entity = new Entity("Comment");
+    entity.setProperty("score", score);
+    datastore.put(entity);
+  }
+}
@@ -0,0 +1,121 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Query.SortDirection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the in-memory views of the top comments. */
+@RunWith(JUnit4.class)
+public final class CommentViewsTest {
+  private static final long VERSION = 1000L;
+  private static final Comment OLD = comment(1, "Ada", 1000L);
+  private static final Comment MIDDLE = comment(2, "Grace", 2000L);
+  private static final Comment NEW = comment(3, "Alan", 3000L);
+
+  private final CommentViews views = CommentViews.getInstance();
+
+  @Before
+  public void setUp() {
+    views.invalidate();
+  }
+
+  @Test
+  public void missingViewHasNoPages() {
+    Assert.assertNull(views.getPage("timestamp", SortDirection.DESCENDING, VERSION, 0, 5));
+  }
+
+  @Test
+  public void completeViewServesShortLastPage() {
+    views.load("timestamp", SortDirection.DESCENDING, VERSION, Arrays.asList(NEW, MIDDLE, OLD));
+
+    Assert.assertEquals(Arrays.asList(NEW, MIDDLE),
+        views.getPage("timestamp", SortDirection.DESCENDING, VERSION, 0, 2));
+    Assert.assertEquals(Arrays.asList(OLD),
+        views.getPage("timestamp", SortDirection.DESCENDING, VERSION, 2, 2));
+    Assert.assertNull(views.getPage("timestamp", SortDirection.ASCENDING, VERSION, 0, 2));
+  }
+
+  @Test
+  public void incompleteViewDoesNotServePagesPastItsEnd() {
+    List<Comment> comments = new ArrayList<>();
+    for (int i = 0; i <= CommentViews.CAPACITY; i++) {
+      comments.add(comment(i + 1, "Name", 100000L - i));
+    }
+    views.load("timestamp", SortDirection.DESCENDING, VERSION, comments);
+
+    Assert.assertEquals(10,
+        views.getPage("timestamp", SortDirection.DESCENDING, VERSION, 0, 10).size());
+    Assert.assertNull(views.getPage(
+        "timestamp", SortDirection.DESCENDING, VERSION, CommentViews.CAPACITY - 5, 10));
+  }
+
+  @Test
+  public void addedCommentIsInsertedInSortOrder() {
+    views.load("name", SortDirection.ASCENDING, VERSION, Arrays.asList(OLD, MIDDLE));
+
+    views.add(Arrays.asList(NEW), new CommentsVersion.Change(VERSION, VERSION + 1));
+
+    Assert.assertEquals(Arrays.asList(OLD, NEW, MIDDLE),
+        views.getPage("name", SortDirection.ASCENDING, VERSION + 1, 0, 5));
+    Assert.assertNull(views.getPage("name", SortDirection.ASCENDING, VERSION, 0, 5));
+  }
+
+  @Test
+  public void viewIsNotServedAtAnotherVersion() {
+    views.load("timestamp", SortDirection.DESCENDING, VERSION, Arrays.asList(NEW, MIDDLE, OLD));
+
+    Assert.assertNull(views.getPage("timestamp", SortDirection.DESCENDING, VERSION + 1, 0, 2));
+  }
+
+  @Test
+  public void viewThatMissedAWriteIsDroppedInsteadOfAdvanced() {
+    views.load("timestamp", SortDirection.DESCENDING, VERSION, Arrays.asList(MIDDLE, OLD));
+
+    // Another instance published at VERSION + 1 before this one published NEW.
+    views.add(Arrays.asList(NEW), new CommentsVersion.Change(VERSION + 1, VERSION + 2));
+
+    Assert.assertNull(views.getPage("timestamp", SortDirection.DESCENDING, VERSION + 2, 0, 5));
+  }
+
+  @Test
+  public void slowLoadDoesNotReplaceNewerView() {
+    views.load("timestamp", SortDirection.DESCENDING, VERSION, Arrays.asList(MIDDLE, OLD));
+    views.add(Arrays.asList(NEW), new CommentsVersion.Change(VERSION, VERSION + 1));
+
+    // A request that read the version before NEW was published finishes its query last.
+    views.load("timestamp", SortDirection.DESCENDING, VERSION, Arrays.asList(MIDDLE, OLD));
+
+    Assert.assertEquals(Arrays.asList(NEW, MIDDLE, OLD),
+        views.getPage("timestamp", SortDirection.DESCENDING, VERSION + 1, 0, 5));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeOffsetIsRejected() {
+    views.getPage("timestamp", SortDirection.DESCENDING, VERSION, -1, 5);
+  }
+
+  private static Comment comment(long id, String name, long timestamp) {
+    return new Comment(id, name, name + "@example.com", "Hello", 0.5f, timestamp);
+  }
+}
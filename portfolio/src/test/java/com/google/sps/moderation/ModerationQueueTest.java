@@ -0,0 +1,149 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.moderation;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.taskqueue.dev.QueueStateInfo;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for moderating pending comments and publishing the ones that pass. */
+@RunWith(JUnit4.class)
+public final class ModerationQueueTest {
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setApplyAllHighRepJobPolicy(),
+      new LocalMemcacheServiceTestConfig(),
+      new LocalTaskQueueTestConfig()
+          .setQueueXmlPath("src/main/webapp/WEB-INF/queue.xml")
+          .setDisableAutoTaskExecution(true));
+
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void publishesPassingCommentsAndDropsTheRest() {
+    Key good = putPendingComment("I love this, great work");
+    Key bad = putPendingComment("I hate this, awful and terrible");
+
+    List<Key> failed = new ModerationQueue(null).moderate(Arrays.asList(good, bad));
+
+    Assert.assertEquals(Collections.emptyList(), failed);
+    List<Entity> published = getAll("Comment");
+    Assert.assertEquals(1, published.size());
+    Assert.assertEquals("I love this, great work", published.get(0).getProperty("message"));
+    Assert.assertEquals(1.0, (Double) published.get(0).getProperty("score"), 0.0001);
+    Assert.assertEquals(Collections.emptyList(), getAll("PendingComment"));
+  }
+
+  @Test
+  public void moderatingTwicePublishesOnce() {
+    Key key = putPendingComment("Nice portfolio");
+    ModerationQueue queue = new ModerationQueue(null);
+
+    queue.moderate(Arrays.asList(key));
+    queue.moderate(Arrays.asList(key));
+
+    Assert.assertEquals(1, getAll("Comment").size());
+  }
+
+  @Test
+  public void scoringFailureKeepsTheCommentPendingForARetry() {
+    Key key = putPendingComment("Nice portfolio");
+    ModerationQueue queue = new ModerationQueue(message -> {
+      throw new IOException("Natural Language API unavailable");
+    });
+
+    List<Key> failed = queue.moderate(Arrays.asList(key));
+
+    Assert.assertEquals(Arrays.asList(key), failed);
+    Assert.assertEquals(1, getAll("PendingComment").size());
+    Assert.assertEquals(Collections.emptyList(), getAll("Comment"));
+  }
+
+  @Test
+  public void submitAddsATaskWithTheKeys() {
+    Key key = putPendingComment("Nice portfolio");
+
+    new ModerationQueue(null).submit(Arrays.asList(key));
+
+    QueueStateInfo queue = getModerationQueue();
+    Assert.assertEquals(1, queue.getCountTasks());
+    Assert.assertEquals("/moderate", queue.getTaskInfo().get(0).getUrl());
+    Assert.assertTrue(queue.getTaskInfo().get(0).getBody().contains(
+        ModerationQueue.KEY_PARAMETER + "=" + KeyFactory.keyToString(key)));
+  }
+
+  @Test
+  public void submitStaleOnlyQueuesOldPendingComments() {
+    putPendingComment("Nice portfolio");
+    putPendingComment("Posted an hour ago", System.currentTimeMillis() - 60 * 60 * 1000);
+
+    int queued = new ModerationQueue(null).submitStale();
+
+    Assert.assertEquals(1, queued);
+    Assert.assertEquals(1, getModerationQueue().getCountTasks());
+  }
+
+  private Key putPendingComment(String message) {
+    return putPendingComment(message, System.currentTimeMillis());
+  }
+
+  private Key putPendingComment(String message, long timestamp) {
+    Entity entity = new Entity("PendingComment");
+    entity.setProperty("name", "Person A");
+    entity.setProperty("email", "a@example.com");
+    entity.setProperty("message", message);
+    entity.setProperty("timestamp", timestamp);
+    return datastore.put(entity);
+  }
+
+  private static QueueStateInfo getModerationQueue() {
+    return LocalTaskQueueTestConfig.getLocalTaskQueue().getQueueStateInfo().get("moderation");
+  }
+
+  private List<Entity> getAll(String kind) {
+    return new ArrayList<>(
+        datastore.prepare(new Query(kind)).asList(FetchOptions.Builder.withDefaults()));
+  }
+}
@@ -0,0 +1,160 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.search;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.CommentsVersion;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeMap;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for searching comments through the in-memory index and its snapshot. */
+@RunWith(JUnit4.class)
+public final class CommentIndexTest {
+  private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setApplyAllHighRepJobPolicy(),
+      new LocalMemcacheServiceTestConfig());
+
+  private DatastoreService datastore;
+  private CommentIndex index;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    index = CommentIndex.getInstance();
+    index.clear();
+  }
+
+  @After
+  public void tearDown() {
+    index.clear();
+    helper.tearDown();
+  }
+
+  @Test
+  public void findsCommentsWithEveryTerm() {
+    long both = putComment("Ada", "Lovely portfolio, great projects", 0L);
+    putComment("Grace", "Great talk", 0L);
+    long prefix = putComment("Alan", "Projection queries are great", 0L);
+
+    Assert.assertEquals(Arrays.asList(both), index.search("great portfolio", 0L, 10));
+    Assert.assertEquals(Arrays.asList(both, prefix), index.search("GREAT proj*", 0L, 10));
+    Assert.assertEquals(Arrays.asList(prefix), index.search("great proj*", both, 10));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void queryWithoutWordsIsRejected() {
+    index.search(" *, ", 0L, 10);
+  }
+
+  @Test
+  public void firstLoadSavesSnapshot() throws EntityNotFoundException {
+    long id = putComment("Ada", "Hello", 0L);
+    index.search("hello", 0L, 10);
+
+    TreeMap<String, PostingList> postings = new TreeMap<>();
+    Assert.assertNotNull(IndexSnapshot.load(postings));
+    Assert.assertEquals(1, postings.get("hello").size());
+    Assert.assertEquals(id, postings.get("hello").get(0));
+    Key snapshotKey = KeyFactory.createKey("SearchIndexSnapshot", "comments");
+    Assert.assertEquals(1L, datastore.get(snapshotKey).getProperty("chunks"));
+  }
+
+  @Test
+  public void catchesUpWithCommentsPublishedElsewhere() {
+    putComment("Ada", "Hello", 0L);
+    Assert.assertEquals(1, index.search("hello", 0L, 10).size());
+
+    // Posted an hour ago but only published now, on another instance.
+    long late = putComment("Grace", "Hello again", System.currentTimeMillis() - HOUR_MILLIS);
+    Assert.assertEquals(1, index.search("hello", 0L, 10).size());
+    CommentsVersion.bump();
+
+    Assert.assertEquals(Arrays.asList(late), index.search("again", 0L, 10));
+  }
+
+  @Test
+  public void failedLoadIsRetried() {
+    Entity broken = new Entity("Comment");
+    broken.setProperty("name", 42L);
+    broken.setProperty("publishedAt", System.currentTimeMillis());
+    datastore.put(broken);
+    long id = putComment("Ada", "Hello", 0L);
+
+    try {
+      index.search("hello", 0L, 10);
+      Assert.fail("Expected the scan to fail on the broken comment.");
+    } catch (ClassCastException expected) {
+      // The scan reads the name as a string.
+    }
+
+    datastore.delete(broken.getKey());
+    Assert.assertEquals(Arrays.asList(id), index.search("hello", 0L, 10));
+  }
+
+  @Test
+  public void clearDropsSnapshot() {
+    putComment("Ada", "Hello", 0L);
+    index.search("hello", 0L, 10);
+
+    index.clear();
+
+    Assert.assertNull(IndexSnapshot.load(new TreeMap<>()));
+  }
+
+  @Test
+  public void snapshotRoundTripsLargeIds() {
+    TreeMap<String, PostingList> postings = new TreeMap<>();
+    PostingList list = new PostingList();
+    list.add(5L);
+    list.add(Long.MAX_VALUE - 1);
+    postings.put("hello", list);
+
+    Assert.assertTrue(IndexSnapshot.save(IndexSnapshot.encode(postings), 1234L));
+    TreeMap<String, PostingList> loaded = new TreeMap<>();
+
+    Assert.assertEquals(Long.valueOf(1234L), IndexSnapshot.load(loaded));
+    Assert.assertEquals(Collections.singleton("hello"), loaded.keySet());
+    Assert.assertEquals(Long.MAX_VALUE - 1, loaded.get("hello").get(1));
+  }
+
+  /** Put a comment published now, returning its id. */
+  private long putComment(String name, String message, long timestamp) {
+    Entity entity = new Entity("Comment");
+    entity.setProperty("name", name);
+    entity.setProperty("message", message);
+    entity.setProperty("timestamp", timestamp);
+    entity.setProperty("publishedAt", System.currentTimeMillis());
+    return datastore.put(entity).getId();
+  }
+}
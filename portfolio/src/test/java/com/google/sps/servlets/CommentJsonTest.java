@@ -0,0 +1,171 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Projection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.data.Comment;
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/** Tests for writing partial comments and the projection queries behind them. */
+@RunWith(JUnit4.class)
+public final class CommentJsonTest {
+  private static final String[] SORT_PROPERTIES = {"timestamp", "name", "email", "score"};
+  private static final File INDEXES = new File("src/main/webapp/WEB-INF/datastore-indexes.xml");
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    Entity entity = new Entity("Comment");
+    entity.setProperty("name", "Ada");
+    entity.setProperty("email", "ada@example.com");
+    entity.setProperty("message", "Hello");
+    entity.setProperty("score", 0.5);
+    entity.setProperty("timestamp", 1000L);
+    datastore.put(entity);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void summaryFieldsAreProjected() {
+    Query query = DataServlet.makeQuery("timestamp", SortDirection.DESCENDING);
+    CommentJson.addProjections(
+        query, CommentJson.parseFields("id,name,timestamp"), "timestamp");
+
+    Assert.assertEquals(new HashSet<>(Arrays.asList("name", "timestamp")), getProjected(query));
+  }
+
+  @Test
+  public void sortPropertyAloneIsProjected() {
+    Query query = DataServlet.makeQuery("score", SortDirection.ASCENDING);
+    CommentJson.addProjections(query, CommentJson.parseFields("id,sentimentScore"), "score");
+
+    Assert.assertEquals(new HashSet<>(Arrays.asList("score")), getProjected(query));
+  }
+
+  @Test
+  public void fieldsWithoutAnIndexReadWholeEntities() {
+    Query query = DataServlet.makeQuery("timestamp", SortDirection.DESCENDING);
+    CommentJson.addProjections(query, CommentJson.parseFields("name,email"), "timestamp");
+
+    Assert.assertTrue(query.getProjections().isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownFieldIsRejected() {
+    CommentJson.parseFields("id,password");
+  }
+
+  @Test
+  public void everyFieldsAndSortCombinationHasAnIndex() throws Exception {
+    Set<String> indexes = readDeclaredIndexes();
+    List<String> allFields = new ArrayList<>(CommentJson.ALL_FIELDS);
+    for (int mask = 1; mask < 1 << allFields.size(); mask++) {
+      Set<String> fields = new LinkedHashSet<>();
+      for (int i = 0; i < allFields.size(); i++) {
+        if ((mask & 1 << i) != 0) {
+          fields.add(allFields.get(i));
+        }
+      }
+
+      for (String sortBy : SORT_PROPERTIES) {
+        for (SortDirection direction : SortDirection.values()) {
+          Query query = DataServlet.makeQuery(sortBy, direction);
+          CommentJson.addProjections(query, fields, sortBy);
+          Set<String> projected = getProjected(query);
+          if (projected.size() > 1) {
+            Assert.assertTrue(fields + " by " + sortBy + " " + direction,
+                indexes.contains(describeIndex(sortBy, direction, projected)));
+          }
+
+          List<Entity> results = datastore.prepare(query).asList(FetchOptions.Builder.withDefaults());
+          StringWriter json = new StringWriter();
+          CommentJson.writeComment(new JsonWriter(json), Comment.fromEntity(results.get(0)), fields);
+          Assert.assertEquals(fields.contains("message"), json.toString().contains("Hello"));
+          Assert.assertEquals(fields.contains("email"), json.toString().contains("ada@"));
+        }
+      }
+    }
+  }
+
+  private static Set<String> getProjected(Query query) {
+    Set<String> properties = new HashSet<>();
+    for (Projection projection : query.getProjections()) {
+      properties.add(projection.getName());
+    }
+    return properties;
+  }
+
+  /** Describe an index by its leading sort and the set of properties it covers. */
+  private static String describeIndex(
+      String sortBy, SortDirection direction, Set<String> properties) {
+    String leading = sortBy + (direction == SortDirection.ASCENDING ? " asc" : " desc");
+    return leading + " " + new TreeSet<>(properties);
+  }
+
+  private static Set<String> readDeclaredIndexes() throws Exception {
+    Set<String> indexes = new HashSet<>();
+    NodeList declared = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(INDEXES).getElementsByTagName("datastore-index");
+    for (int i = 0; i < declared.getLength(); i++) {
+      NodeList properties = ((Element) declared.item(i)).getElementsByTagName("property");
+      Element leading = (Element) properties.item(0);
+      Set<String> names = new HashSet<>();
+      for (int j = 0; j < properties.getLength(); j++) {
+        names.add(((Element) properties.item(j)).getAttribute("name"));
+      }
+      SortDirection direction = leading.getAttribute("direction").equals("desc")
+          ? SortDirection.DESCENDING : SortDirection.ASCENDING;
+      indexes.add(describeIndex(leading.getAttribute("name"), direction, names));
+    }
+    return indexes;
+  }
+}
@@ -0,0 +1,197 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.Gson;
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentPage;
+import com.google.sps.data.CommentViews;
+import com.google.sps.data.CommentsVersion;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for paging through comments with offset tokens and datastore cursors. */
+@RunWith(JUnit4.class)
+public final class DataServletTest {
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setApplyAllHighRepJobPolicy(),
+      new LocalMemcacheServiceTestConfig());
+
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    CommentViews.getInstance().invalidate();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void pagesFromViewsChainOffsetTokens() {
+    putComment("Ada", 1000L);
+    putComment("Grace", 2000L);
+    putComment("Alan", 3000L);
+
+    CommentPage first = getPageFromViews("timestamp", SortDirection.DESCENDING, 0, 2);
+    Assert.assertEquals("offset:2", first.getNextPageToken());
+    Assert.assertEquals("Alan", first.getComments().get(0).getName());
+    Assert.assertEquals("Grace", first.getComments().get(1).getName());
+
+    CommentPage second = getPageFromViews("timestamp", SortDirection.DESCENDING, 2, 2);
+    Assert.assertNull(second.getNextPageToken());
+    Assert.assertEquals(1, second.getComments().size());
+    Assert.assertEquals("Ada", second.getComments().get(0).getName());
+  }
+
+  @Test
+  public void loadedPageDoesNotDependOnViewsSurvivingTheLoad() {
+    putComment("Ada", 1000L);
+
+    CommentPage page = getPageFromViews("name", SortDirection.ASCENDING, 0, 5);
+    CommentViews.getInstance().invalidate();
+
+    List<Comment> comments = page.getComments();
+    Assert.assertEquals(1, comments.size());
+    Assert.assertNull(page.getNextPageToken());
+  }
+
+  @Test
+  public void pagesPastTheViewsAreLeftToTheDatastore() {
+    Assert.assertNull(
+        getPageFromViews("timestamp", SortDirection.DESCENDING, CommentViews.CAPACITY, 5));
+  }
+
+  @Test
+  public void lastPageInTheViewsHandsOutACursor() throws Exception {
+    for (int i = 0; i < CommentViews.CAPACITY + 10; i++) {
+      putComment("Person " + i, 1000L * i);
+    }
+
+    // Telling whether the page at offset 90 has a next page means reading past the views, so
+    // it comes from the datastore and its next page token is a cursor rather than an offset.
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put("num-comments", "10");
+    parameters.put("page-token", "offset:" + (CommentViews.CAPACITY - 10));
+    TestHttp.Response response = new TestHttp.Response();
+    new DataServlet().doGet(TestHttp.request(parameters), response.proxy);
+
+    Assert.assertEquals(HttpServletResponse.SC_OK, response.status);
+    CommentPage page = new Gson().fromJson(response.body.toString(), CommentPage.class);
+    Assert.assertEquals(10, page.getComments().size());
+    Assert.assertNotNull(page.getNextPageToken());
+    Assert.assertFalse(page.getNextPageToken().startsWith("offset:"));
+  }
+
+  @Test
+  public void doGetFollowsOffsetToken() throws Exception {
+    putComment("Ada", 1000L);
+    putComment("Grace", 2000L);
+
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put("num-comments", "1");
+    parameters.put("page-token", "offset:1");
+    TestHttp.Response response = new TestHttp.Response();
+    new DataServlet().doGet(TestHttp.request(parameters), response.proxy);
+
+    Assert.assertEquals(HttpServletResponse.SC_OK, response.status);
+    Assert.assertTrue(response.body.toString().contains("\"Ada\""));
+    Assert.assertFalse(response.body.toString().contains("nextPageToken"));
+  }
+
+  @Test
+  public void viewsReloadWhenTheVersionMoves() {
+    putComment("Ada", 1000L);
+    Assert.assertEquals(1,
+        getPageFromViews("timestamp", SortDirection.DESCENDING, 0, 5).getComments().size());
+
+    // A comment published by another instance only reaches this one through the version.
+    putComment("Grace", 2000L);
+    CommentsVersion.bump();
+
+    CommentPage page = getPageFromViews("timestamp", SortDirection.DESCENDING, 0, 5);
+    Assert.assertEquals(2, page.getComments().size());
+    Assert.assertEquals("Grace", page.getComments().get(0).getName());
+  }
+
+  @Test
+  public void doGetAnswersNotModifiedUntilTheVersionMoves() throws Exception {
+    putComment("Ada", 1000L);
+    TestHttp.Response first = new TestHttp.Response();
+    new DataServlet().doGet(TestHttp.request(new HashMap<>()), first.proxy);
+    String etag = first.headers.get("ETag");
+
+    Map<String, String> headers = new HashMap<>();
+    headers.put("If-None-Match", etag);
+    TestHttp.Response unchanged = new TestHttp.Response();
+    new DataServlet().doGet(TestHttp.request(new HashMap<>(), headers), unchanged.proxy);
+    Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, unchanged.status);
+
+    CommentsVersion.bump();
+    TestHttp.Response changed = new TestHttp.Response();
+    new DataServlet().doGet(TestHttp.request(new HashMap<>(), headers), changed.proxy);
+    Assert.assertEquals(HttpServletResponse.SC_OK, changed.status);
+    Assert.assertNotEquals(etag, changed.headers.get("ETag"));
+  }
+
+  @Test
+  public void doGetRejectsMalformedPageTokens() throws Exception {
+    String pastTheViews = "offset:" + (CommentViews.CAPACITY + 1);
+    for (String token : new String[] {"offset:abc", "offset:-1", pastTheViews, "not a cursor"}) {
+      Map<String, String> parameters = new HashMap<>();
+      parameters.put("page-token", token);
+      TestHttp.Response response = new TestHttp.Response();
+      new DataServlet().doGet(TestHttp.request(parameters), response.proxy);
+
+      Assert.assertEquals(token, HttpServletResponse.SC_BAD_REQUEST, response.status);
+    }
+  }
+
+  private static CommentPage getPageFromViews(
+      String sortBy, SortDirection direction, int offset, int maxComments) {
+    return DataServlet.getPageFromViews(
+        sortBy, direction, CommentsVersion.get(), offset, maxComments);
+  }
+
+  private void putComment(String name, long timestamp) {
+    Entity entity = new Entity("Comment");
+    entity.setProperty("name", name);
+    entity.setProperty("email", name + "@example.com");
+    entity.setProperty("message", "Hello from " + name);
+    entity.setProperty("score", 0.5);
+    entity.setProperty("timestamp", timestamp);
+    datastore.put(entity);
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.Gson;
+import com.google.sps.data.DeleteProgress;
+import java.util.Collections;
+import java.util.Map;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for deleting every comment and resuming a delete from a token. */
+@RunWith(JUnit4.class)
+public final class DeleteCommentsServletTest {
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setApplyAllHighRepJobPolicy(),
+      new LocalMemcacheServiceTestConfig());
+
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void deletesEveryKind() throws Exception {
+    datastore.put(new Entity("PendingComment"));
+    datastore.put(new Entity("Comment"));
+    datastore.put(new Entity("Comment"));
+
+    DeleteProgress progress = post(Collections.emptyMap());
+
+    Assert.assertTrue(progress.isDone());
+    Assert.assertEquals(3, progress.getDeleted());
+    Assert.assertNull(progress.getResumeToken());
+    Assert.assertEquals(0, count("PendingComment") + count("Comment"));
+  }
+
+  @Test
+  public void resumesFromTheKindInTheToken() throws Exception {
+    datastore.put(new Entity("PendingComment"));
+    datastore.put(new Entity("Comment"));
+
+    DeleteProgress progress = post(Collections.singletonMap("resume-token", "1:"));
+
+    Assert.assertTrue(progress.isDone());
+    Assert.assertEquals(1, progress.getDeleted());
+    Assert.assertEquals(1, count("PendingComment"));
+    Assert.assertEquals(0, count("Comment"));
+  }
+
+  @Test
+  public void rejectsMalformedResumeTokens() throws Exception {
+    datastore.put(new Entity("Comment"));
+
+    for (String token : new String[] {"-1:", "2:", "x:", "0", "0:not a cursor"}) {
+      TestHttp.Response response = new TestHttp.Response();
+      new DeleteCommentsServlet().doPost(
+          TestHttp.request(Collections.singletonMap("resume-token", token)), response.proxy);
+
+      Assert.assertEquals(token, HttpServletResponse.SC_BAD_REQUEST, response.status);
+    }
+    Assert.assertEquals(1, count("Comment"));
+  }
+
+  private DeleteProgress post(Map<String, String> parameters) throws Exception {
+    TestHttp.Response response = new TestHttp.Response();
+    new DeleteCommentsServlet().doPost(TestHttp.request(parameters), response.proxy);
+    Assert.assertEquals(HttpServletResponse.SC_OK, response.status);
+    return new Gson().fromJson(response.body.toString(), DeleteProgress.class);
+  }
+
+  private int count(String kind) {
+    return datastore.prepare(new Query(kind)).countEntities(FetchOptions.Builder.withDefaults());
+  }
+}
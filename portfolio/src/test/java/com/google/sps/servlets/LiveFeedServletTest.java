@@ -0,0 +1,191 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.Gson;
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentUpdates;
+import com.google.sps.live.CommentFeed;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for answering long polls for newly published comments. */
+@RunWith(JUnit4.class)
+public final class LiveFeedServletTest {
+  private static final Gson GSON = new Gson();
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setApplyAllHighRepJobPolicy(),
+      new LocalMemcacheServiceTestConfig());
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void answersAtOnceWithCommentsPublishedSinceThePoll() throws Exception {
+    // Published long enough before the poll's time that it is out of the catch up margin.
+    putComment("Before", 100000L - CommentFeed.CATCH_UP_MARGIN_MILLIS - 1);
+    putComment("First", 200000L);
+    putComment("Second", 300000L);
+    Poll poll = new Poll(Collections.singletonMap("since", "100000"));
+
+    new LiveFeedServlet().doGet(poll.request, poll.response.proxy);
+
+    Assert.assertTrue(poll.completed);
+    CommentUpdates updates = GSON.fromJson(poll.response.body.toString(), CommentUpdates.class);
+    Assert.assertEquals(300000L, updates.getSince());
+    Assert.assertEquals(2, updates.getComments().size());
+    Assert.assertEquals("First", updates.getComments().get(0).getMessage());
+    Assert.assertEquals("Second", updates.getComments().get(1).getMessage());
+  }
+
+  @Test
+  public void catchesUpOnCommentsStampedBeforeThePollsTime() throws Exception {
+    // Published on another instance whose clock is behind, or committed after the client's
+    // last answer was sent.
+    putComment("Late", 90000L);
+    Poll poll = new Poll(Collections.singletonMap("since", "100000"));
+
+    new LiveFeedServlet().doGet(poll.request, poll.response.proxy);
+
+    Assert.assertTrue(poll.completed);
+    CommentUpdates updates = GSON.fromJson(poll.response.body.toString(), CommentUpdates.class);
+    Assert.assertEquals(100000L, updates.getSince());
+    Assert.assertEquals("Late", updates.getComments().get(0).getMessage());
+  }
+
+  @Test
+  public void skipsCommentsTheClientHasSeen() throws Exception {
+    long id = putComment("Seen", 90000L);
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put("since", "100000");
+    parameters.put("seen", Long.toString(id));
+    Poll poll = new Poll(parameters);
+
+    new LiveFeedServlet().doGet(poll.request, poll.response.proxy);
+
+    Assert.assertFalse(poll.completed);
+    CommentFeed.getInstance().publish(
+        Arrays.asList(new Comment(1, "Ada", "ada@example.com", "Hello", 0.5f, 110000L)), 110000L);
+    Assert.assertTrue(poll.completed);
+  }
+
+  @Test
+  public void firstPollDoesNotResendRecentComments() throws Exception {
+    putComment("Already on the page", System.currentTimeMillis() - 1000);
+    Poll poll = new Poll(Collections.emptyMap());
+
+    new LiveFeedServlet().doGet(poll.request, poll.response.proxy);
+
+    Assert.assertFalse(poll.completed);
+    CommentFeed.getInstance().publish(
+        Arrays.asList(new Comment(1, "Ada", "ada@example.com", "Hello", 0.5f, 0L)),
+        System.currentTimeMillis());
+    Assert.assertTrue(poll.completed);
+  }
+
+  @Test
+  public void holdsThePollUntilCommentsArePublished() throws Exception {
+    Poll poll = new Poll(Collections.singletonMap("since", "1000"));
+
+    new LiveFeedServlet().doGet(poll.request, poll.response.proxy);
+
+    Assert.assertFalse(poll.completed);
+    Assert.assertEquals(1, CommentFeed.getInstance().getWaitingCount());
+
+    Comment comment = new Comment(1, "Ada", "ada@example.com", "Hello", 0.5f, 5000L);
+    CommentFeed.getInstance().publish(Arrays.asList(comment), 5000L);
+
+    Assert.assertTrue(poll.completed);
+    Assert.assertEquals(0, CommentFeed.getInstance().getWaitingCount());
+    CommentUpdates updates = GSON.fromJson(poll.response.body.toString(), CommentUpdates.class);
+    Assert.assertEquals(5000L, updates.getSince());
+    Assert.assertEquals("Hello", updates.getComments().get(0).getMessage());
+  }
+
+  @Test
+  public void rejectsAMalformedPublishTime() throws Exception {
+    Poll poll = new Poll(Collections.singletonMap("since", "yesterday"));
+
+    new LiveFeedServlet().doGet(poll.request, poll.response.proxy);
+
+    Assert.assertEquals(HttpServletResponse.SC_BAD_REQUEST, poll.response.status);
+    Assert.assertEquals(0, CommentFeed.getInstance().getWaitingCount());
+  }
+
+  private static long putComment(String message, long publishedAt) {
+    Entity entity = new Entity("Comment");
+    entity.setProperty("name", "Ada");
+    entity.setProperty("email", "ada@example.com");
+    entity.setProperty("message", message);
+    entity.setProperty("score", 0.5);
+    entity.setProperty("timestamp", publishedAt);
+    entity.setProperty("publishedAt", publishedAt);
+    return DatastoreServiceFactory.getDatastoreService().put(entity).getId();
+  }
+
+  /** A request that can be put into async mode, recording whether it was completed. */
+  private static final class Poll {
+    final TestHttp.Response response = new TestHttp.Response();
+    final HttpServletRequest request;
+    boolean completed;
+
+    Poll(Map<String, String> parameters) {
+      HttpServletRequest plain = TestHttp.request(parameters);
+      AsyncContext context = (AsyncContext) Proxy.newProxyInstance(
+          LiveFeedServletTest.class.getClassLoader(), new Class<?>[] {AsyncContext.class},
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "getResponse":
+                return response.proxy;
+              case "complete":
+                completed = true;
+                return null;
+              default:
+                return null;
+            }
+          });
+      request = (HttpServletRequest) Proxy.newProxyInstance(
+          LiveFeedServletTest.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+          (proxy, method, args) -> method.getName().equals("startAsync")
+              ? context : method.invoke(plain, args));
+    }
+  }
+}
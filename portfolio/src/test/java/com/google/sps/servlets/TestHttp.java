@@ -0,0 +1,111 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.servlets;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** In-process requests and responses that record what a servlet did, for servlet tests. */
+final class TestHttp {
+
+  private TestHttp() {}
+
+  /**
+   * Create a request with the given parameters and headers.
+   *
+   * @param parameters The request parameters.
+   * @param headers The request headers.
+   * @return a request that answers parameter and header lookups.
+   */
+  static HttpServletRequest request(Map<String, String> parameters, Map<String, String> headers) {
+    return (HttpServletRequest) Proxy.newProxyInstance(TestHttp.class.getClassLoader(),
+        new Class<?>[] {HttpServletRequest.class}, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getParameter":
+              return parameters.get(args[0]);
+            case "getParameterMap":
+              return Collections.unmodifiableMap(parameters);
+            case "getHeader":
+              return headers.get(args[0]);
+            case "getDateHeader":
+              return -1L;
+            case "getServerName":
+              return headers.getOrDefault("Host", "localhost");
+            default:
+              return null;
+          }
+        });
+  }
+
+  /**
+   * Create a request with the given parameters and no headers.
+   *
+   * @param parameters The request parameters.
+   * @return a request that answers parameter lookups.
+   */
+  static HttpServletRequest request(Map<String, String> parameters) {
+    return request(parameters, Collections.emptyMap());
+  }
+
+  /** A response that keeps its status, headers and body. */
+  static final class Response {
+    int status = HttpServletResponse.SC_OK;
+    final Map<String, String> headers = new HashMap<>();
+    final StringWriter body = new StringWriter();
+    final HttpServletResponse proxy;
+
+    Response() {
+      PrintWriter writer = new PrintWriter(body, true);
+      proxy = (HttpServletResponse) Proxy.newProxyInstance(TestHttp.class.getClassLoader(),
+          new Class<?>[] {HttpServletResponse.class}, (p, method, args) -> {
+            switch (method.getName()) {
+              case "setStatus":
+              case "sendError":
+                status = (Integer) args[0];
+                return null;
+              case "setHeader":
+              case "addHeader":
+                headers.put((String) args[0], (String) args[1]);
+                return null;
+              case "setDateHeader":
+                headers.put((String) args[0], String.valueOf(args[1]));
+                return null;
+              case "setContentType":
+                headers.put("Content-Type", (String) args[0]);
+                return null;
+              case "sendRedirect":
+                status = HttpServletResponse.SC_FOUND;
+                headers.put("Location", (String) args[0]);
+                return null;
+              case "getWriter":
+                return writer;
+              case "containsHeader":
+                return headers.containsKey(args[0]);
+              case "isCommitted":
+                return false;
+              default:
+                return null;
+            }
+          });
+    }
+  }
+}
@@ -0,0 +1,86 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Answers many meeting requests at once. The busy minutes of each attendee named in any of the
+ * requests are computed once and shared, and the requests are then answered in parallel.
+ */
+public final class BatchMeetingQuery {
+  /** Shared by every batch so that concurrent batches do not oversubscribe the processors. */
+  private static final ForkJoinPool POOL = new ForkJoinPool();
+
+  /**
+   * Answers each request against the same busy index and horizon.
+   *
+   * @param index The busy times of everyone with events in the horizon.
+   * @param requests The meetings to find times for.
+   * @param horizon The time to search for meeting times in.
+   * @return the ranges each meeting can be held in, in the same order as the requests.
+   */
+  public List<Collection<TimeRange>> query(
+      BusyIndex index, List<MeetingRequest> requests, TimeRange horizon) {
+    Set<String> attendees = new LinkedHashSet<>();
+    for (MeetingRequest request : requests) {
+      attendees.addAll(request.getAttendees());
+      attendees.addAll(request.getOptionalAttendees());
+    }
+
+    List<Callable<MinuteMask>> maskTasks = new ArrayList<>();
+    for (String attendee : attendees) {
+      maskTasks.add(() -> FindMeetingQuery.getBusyMask(index, attendee, horizon));
+    }
+    List<MinuteMask> masks = invokeAll(maskTasks);
+    Map<String, MinuteMask> busyMasks = new HashMap<>();
+    int i = 0;
+    for (String attendee : attendees) {
+      busyMasks.put(attendee, masks.get(i++));
+    }
+
+    List<Callable<Collection<TimeRange>>> queryTasks = new ArrayList<>();
+    for (MeetingRequest request : requests) {
+      queryTasks.add(() -> FindMeetingQuery.queryBusyMasks(busyMasks::get, request, horizon));
+    }
+    return invokeAll(queryTasks);
+  }
+
+  /** Runs the tasks on the pool and returns their results in order. */
+  private static <T> List<T> invokeAll(List<Callable<T>> tasks) {
+    List<T> results = new ArrayList<>();
+    try {
+      for (Future<T> future : POOL.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while answering meeting requests.", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Could not answer a meeting request.", e.getCause());
+    }
+    return results;
+  }
+}
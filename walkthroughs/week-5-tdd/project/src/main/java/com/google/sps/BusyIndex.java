@@ -0,0 +1,177 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The times each attendee is busy, built once from a set of events so that a query only has to
+ * look at the attendees it names. Each attendee's busy time is kept as sorted, merged ranges.
+ *
+ * <p>An index is tagged with the version of the events it was built from, so a cached index
+ * can be rebuilt when they change.
+ */
+public final class BusyIndex {
+  private static final Intervals NONE = new Intervals(new int[0], new int[0]);
+
+  private final Map<String, Intervals> busy;
+  private final long version;
+
+  private BusyIndex(Map<String, Intervals> busy, long version) {
+    this.busy = busy;
+    this.version = version;
+  }
+
+  /**
+   * Builds the index for a set of events.
+   *
+   * @param events The events to index. Must be non-null.
+   * @param version The version of the events, returned by {@code getVersion}.
+   */
+  public static BusyIndex build(Collection<Event> events, long version) {
+    Map<String, PackedRanges> ranges = new HashMap<>();
+    for (Event event : events) {
+      TimeRange when = event.getWhen();
+      if (when.duration() <= 0) {
+        continue;
+      }
+      for (String attendee : event.getAttendees()) {
+        ranges.computeIfAbsent(attendee, key -> new PackedRanges()).add(when.start(), when.end());
+      }
+    }
+
+    Map<String, Intervals> busy = new HashMap<>();
+    for (Map.Entry<String, PackedRanges> entry : ranges.entrySet()) {
+      busy.put(entry.getKey(), entry.getValue().merge());
+    }
+    return new BusyIndex(busy, version);
+  }
+
+  /** Returns the version of the events this index was built from. */
+  public long getVersion() {
+    return version;
+  }
+
+  /** Returns the times an attendee is busy, which are empty if they have no events. */
+  Intervals get(String attendee) {
+    return busy.getOrDefault(attendee, NONE);
+  }
+
+  /** Returns the times at least one of the attendees is busy during {@code window}. */
+  Intervals get(Collection<String> attendees, TimeRange window) {
+    if (attendees.size() == 1) {
+      return get(attendees.iterator().next()).within(window);
+    }
+
+    PackedRanges ranges = new PackedRanges();
+    for (String attendee : attendees) {
+      Intervals intervals = get(attendee).within(window);
+      for (int i = 0; i < intervals.size(); i++) {
+        ranges.add(intervals.starts[i], intervals.ends[i]);
+      }
+    }
+    return ranges.merge();
+  }
+
+  /** Ranges packed into longs with the start in the high half, so they sort by start. */
+  private static final class PackedRanges {
+    private long[] packed = new long[4];
+    private int count;
+
+    private void add(int start, int end) {
+      if (count == packed.length) {
+        packed = Arrays.copyOf(packed, count * 2);
+      }
+      packed[count++] = ((long) start << Integer.SIZE) | (end & 0xFFFFFFFFL);
+    }
+
+    /** Sorts the ranges and merges the ones that overlap or touch. */
+    private Intervals merge() {
+      Arrays.sort(packed, 0, count);
+      int[] starts = new int[count];
+      int[] ends = new int[count];
+      int merged = 0;
+      for (int i = 0; i < count; i++) {
+        int start = (int) (packed[i] >> Integer.SIZE);
+        int end = (int) packed[i];
+        if (merged > 0 && start <= ends[merged - 1]) {
+          ends[merged - 1] = Math.max(ends[merged - 1], end);
+        } else {
+          starts[merged] = start;
+          ends[merged] = end;
+          merged++;
+        }
+      }
+      return new Intervals(Arrays.copyOf(starts, merged), Arrays.copyOf(ends, merged));
+    }
+  }
+
+  /**
+   * Disjoint ranges sorted by start time. Range i starts at {@code starts[i]} and ends just
+   * before {@code ends[i]}.
+   */
+  static final class Intervals {
+    final int[] starts;
+    final int[] ends;
+
+    private Intervals(int[] starts, int[] ends) {
+      this.starts = starts;
+      this.ends = ends;
+    }
+
+    int size() {
+      return starts.length;
+    }
+
+    /**
+     * Returns the ranges that overlap {@code window}. The ranges are disjoint, so their ends
+     * are sorted too and the first one is found by binary search.
+     */
+    Intervals within(TimeRange window) {
+      int low = 0;
+      int high = starts.length;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (ends[middle] <= window.start()) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+
+      int last = low;
+      while (last < starts.length && starts[last] < window.end()) {
+        last++;
+      }
+      if (low == 0 && last == starts.length) {
+        return this;
+      }
+      return new Intervals(Arrays.copyOfRange(starts, low, last), Arrays.copyOfRange(ends, low, last));
+    }
+
+    /** Returns the ranges as a list, for tests and debugging. */
+    List<TimeRange> toRanges() {
+      TimeRange[] ranges = new TimeRange[starts.length];
+      for (int i = 0; i < ranges.length; i++) {
+        ranges[i] = TimeRange.fromStartEnd(starts[i], ends[i], false);
+      }
+      return Arrays.asList(ranges);
+    }
+  }
+}
@@ -0,0 +1,183 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Events indexed by attendee, so that the events an attendee has in a window of time can be
+ * found without looking at the rest of their calendar. Each attendee's events are kept in a
+ * centered interval tree, which finds the k events overlapping a window in O(log n + k) time.
+ *
+ * <p>Events are usually in epoch minutes so that a store can hold weeks or months of
+ * calendars.
+ */
+public final class EventStore {
+  private final Map<String, Node> trees;
+
+  private EventStore(Map<String, Node> trees) {
+    this.trees = trees;
+  }
+
+  /**
+   * Builds the store for a set of events. Events with no duration are left out, since they
+   * overlap nothing.
+   *
+   * @param events The events to store. Must be non-null.
+   */
+  public static EventStore build(Collection<Event> events) {
+    Map<String, List<Event>> byAttendee = new HashMap<>();
+    for (Event event : events) {
+      if (event.getWhen().duration() <= 0) {
+        continue;
+      }
+      for (String attendee : event.getAttendees()) {
+        byAttendee.computeIfAbsent(attendee, key -> new ArrayList<>()).add(event);
+      }
+    }
+
+    Map<String, Node> trees = new HashMap<>();
+    for (Map.Entry<String, List<Event>> entry : byAttendee.entrySet()) {
+      List<Event> attendeeEvents = entry.getValue();
+      attendeeEvents.sort((a, b) -> TimeRange.ORDER_BY_START.compare(a.getWhen(), b.getWhen()));
+      trees.put(entry.getKey(), Node.build(attendeeEvents));
+    }
+    return new EventStore(trees);
+  }
+
+  /**
+   * Returns the events an attendee has that overlap a window.
+   *
+   * @param attendee The attendee to find the events of.
+   * @param window The time to find events in.
+   * @return the events in no particular order.
+   */
+  public List<Event> getEvents(String attendee, TimeRange window) {
+    List<Event> events = new ArrayList<>();
+    Node.findOverlapping(trees.get(attendee), window.start(), window.end(), events);
+    return events;
+  }
+
+  /**
+   * Returns the events any of the attendees have that overlap a window. Events shared by
+   * several of the attendees are returned once.
+   *
+   * @param attendees The attendees to find the events of.
+   * @param window The time to find events in.
+   * @return the events in no particular order.
+   */
+  public Collection<Event> getEvents(Collection<String> attendees, TimeRange window) {
+    Set<Event> events = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (String attendee : attendees) {
+      events.addAll(getEvents(attendee, window));
+    }
+    return events;
+  }
+
+  /**
+   * A node of a centered interval tree. It holds the events that contain its center minute,
+   * sorted both ways, with the events wholly before the center to its left and the events
+   * wholly after it to its right.
+   */
+  private static final class Node {
+    private final int center;
+    /** The events containing the center in order of start time. */
+    private final Event[] byStart;
+    /** The events containing the center in reverse order of end time. */
+    private final Event[] byEnd;
+    private final Node left;
+    private final Node right;
+
+    private Node(int center, Event[] byStart, Event[] byEnd, Node left, Node right) {
+      this.center = center;
+      this.byStart = byStart;
+      this.byEnd = byEnd;
+      this.left = left;
+      this.right = right;
+    }
+
+    /**
+     * Builds a tree of events sorted by start time. The center is the start of the middle
+     * event, so at most half of the events go to each side and the tree has O(log n) depth.
+     */
+    private static Node build(List<Event> events) {
+      if (events.isEmpty()) {
+        return null;
+      }
+
+      int center = events.get(events.size() / 2).getWhen().start();
+      List<Event> before = new ArrayList<>();
+      List<Event> containing = new ArrayList<>();
+      List<Event> after = new ArrayList<>();
+      for (Event event : events) {
+        TimeRange when = event.getWhen();
+        if (when.end() <= center) {
+          before.add(event);
+        } else if (when.start() > center) {
+          after.add(event);
+        } else {
+          containing.add(event);
+        }
+      }
+
+      Event[] byStart = containing.toArray(new Event[0]);
+      Event[] byEnd = byStart.clone();
+      Arrays.sort(byEnd, (a, b) -> TimeRange.ORDER_BY_END.compare(b.getWhen(), a.getWhen()));
+      return new Node(center, byStart, byEnd, build(before), build(after));
+    }
+
+    /**
+     * Adds the events in a tree that overlap [start, end) to {@code found}. Every node visited
+     * either lies on one path down the tree or adds at least one event, which is what keeps
+     * the search to O(log n + k).
+     */
+    private static void findOverlapping(Node node, int start, int end, List<Event> found) {
+      while (node != null) {
+        if (node.center < start) {
+          // The node's events start before the window, so they overlap it if they end in it.
+          for (Event event : node.byEnd) {
+            if (event.getWhen().end() <= start) {
+              break;
+            }
+            found.add(event);
+          }
+          node = node.right;
+        } else if (node.center >= end) {
+          // The node's events end after the window, so they overlap it if they start in it.
+          for (Event event : node.byStart) {
+            if (event.getWhen().start() >= end) {
+              break;
+            }
+            found.add(event);
+          }
+          node = node.left;
+        } else {
+          // The center is in the window, so every event containing it overlaps.
+          Collections.addAll(found, node.byStart);
+          findOverlapping(node.left, start, end, found);
+          node = node.right;
+        }
+      }
+    }
+  }
+}
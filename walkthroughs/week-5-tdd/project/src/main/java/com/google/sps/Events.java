@@ -16,6 +16,7 @@
 package com.google.sps;
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class Events {
   private static final String PERSON_AMELIA = "Amelia";
@@ -132,6 +133,31 @@ public final class Events {
           Arrays.asList(PERSON_LIAM)),
   };
 
+  /** Bumped by {@code changed()} so that the busy index is rebuilt. */
+  private static final AtomicLong version = new AtomicLong();
+
+  /** The busy index of {@code events}, built on first use. */
+  private static volatile BusyIndex busyIndex;
+
+  /**
+   * Returns the busy index of {@code events}, building it if it has not been built since the
+   * events last changed.
+   */
+  public static BusyIndex getBusyIndex() {
+    long current = version.get();
+    BusyIndex index = busyIndex;
+    if (index == null || index.getVersion() != current) {
+      index = BusyIndex.build(Arrays.asList(events), current);
+      busyIndex = index;
+    }
+    return index;
+  }
+
+  /** Must be called after changing {@code events} so the busy index is rebuilt. */
+  public static void changed() {
+    version.incrementAndGet();
+  }
+
   private Events() {
     // Disallow instances.
   }
@@ -14,10 +14,154 @@
 
 package com.google.sps;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
 
+/**
+ * Finds the times in a day, or any other search horizon, when everyone required for a meeting
+ * is free for long enough to hold it, along with as many of its optional attendees as possible.
+ */
 public final class FindMeetingQuery {
+  /**
+   * Returns the free ranges of the day that are at least as long as the requested meeting, in
+   * order of start time.
+   *
+   * <p>This builds a {@link BusyIndex} of the events for the one query. Callers that query the
+   * same events repeatedly should keep an index and use {@code query(BusyIndex, ...)}.
+   *
+   * @param events The events taking place on the day.
+   * @param request The meeting to find times for.
+   * @return the ranges the meeting can be held in.
+   */
   public Collection<TimeRange> query(Collection<Event> events, MeetingRequest request) {
-    throw new UnsupportedOperationException("TODO: Implement this method.");
+    return query(BusyIndex.build(events, 0), request);
+  }
+
+  /**
+   * Returns the free ranges of the day that are at least as long as the requested meeting, in
+   * order of start time.
+   *
+   * @param index The busy times of everyone with events on the day.
+   * @param request The meeting to find times for.
+   * @return the ranges the meeting can be held in.
+   */
+  public Collection<TimeRange> query(BusyIndex index, MeetingRequest request) {
+    return query(index, request, TimeRange.WHOLE_DAY);
+  }
+
+  /**
+   * Returns the free ranges of a search horizon that are at least as long as the requested
+   * meeting, in order of start time. The events and horizon are usually in epoch minutes.
+   *
+   * <p>Only the events of the attendees named in the request that overlap the horizon are
+   * read from the store, and only those are indexed for the query.
+   *
+   * @param store The events of everyone who might attend.
+   * @param request The meeting to find times for.
+   * @param horizon The time to search for meeting times in.
+   * @return the ranges the meeting can be held in.
+   */
+  public Collection<TimeRange> query(EventStore store, MeetingRequest request, TimeRange horizon) {
+    List<String> attendees = new ArrayList<>(request.getAttendees());
+    attendees.addAll(request.getOptionalAttendees());
+    return query(BusyIndex.build(store.getEvents(attendees, horizon), 0), request, horizon);
+  }
+
+  /**
+   * Returns the free ranges of a search horizon that are at least as long as the requested
+   * meeting, in order of start time.
+   *
+   * <p>Only the busy times of the attendees named in the request are read. They are merged in
+   * start order and swept once, so the query runs in O(n log n) time for the n busy ranges of
+   * those attendees in the horizon.
+   *
+   * <p>If the request has optional attendees, the ranges returned are those where the most
+   * optional attendees can also come, which are all of them when that is possible.
+   *
+   * @param index The busy times of everyone with events in the horizon.
+   * @param request The meeting to find times for.
+   * @param horizon The time to search for meeting times in.
+   * @return the ranges the meeting can be held in.
+   */
+  public Collection<TimeRange> query(BusyIndex index, MeetingRequest request, TimeRange horizon) {
+    if (!request.getOptionalAttendees().isEmpty()) {
+      return queryBusyMasks(attendee -> getBusyMask(index, attendee, horizon), request, horizon);
+    }
+    return findGaps(index.get(request.getAttendees(), horizon), request.getDuration(), horizon);
+  }
+
+  /** Returns the minutes of the horizon that an attendee is busy. */
+  static MinuteMask getBusyMask(BusyIndex index, String attendee, TimeRange horizon) {
+    MinuteMask busy = MinuteMask.empty(horizon);
+    busy.set(index.get(attendee).within(horizon));
+    return busy;
+  }
+
+  /**
+   * Returns the ranges where every mandatory attendee and the most optional attendees are free.
+   *
+   * <p>Each attendee's busy minutes are kept in a {@link MinuteMask}, with the mandatory
+   * attendees sharing one. The minutes a meeting could start at are found for each mask, and
+   * the optional attendees free at each start are counted a word at a time, so no subsets of
+   * optional attendees are tried.
+   *
+   * @param busyMasks Returns the busy minutes of an attendee in the horizon. The masks are
+   *     only read.
+   * @param request The meeting to find times for.
+   * @param horizon The time to search for meeting times in.
+   */
+  static List<TimeRange> queryBusyMasks(
+      Function<String, MinuteMask> busyMasks, MeetingRequest request, TimeRange horizon) {
+    long duration = request.getDuration();
+    MinuteMask mandatoryBusy = MinuteMask.empty(horizon);
+    for (String attendee : request.getAttendees()) {
+      mandatoryBusy.or(busyMasks.apply(attendee));
+    }
+
+    MinuteMask.Counter optionalFree =
+        new MinuteMask.Counter(request.getOptionalAttendees().size(), horizon);
+    for (String attendee : request.getOptionalAttendees()) {
+      optionalFree.add(busyMasks.apply(attendee).complement().starts(duration));
+    }
+    MinuteMask starts = optionalFree.max(mandatoryBusy.complement().starts(duration));
+    List<TimeRange> ranges = starts.toRanges(duration);
+
+    // A meeting with only optional attendees is not worth holding when none of them can come.
+    if (request.getAttendees().isEmpty() && !request.getOptionalAttendees().isEmpty()
+        && !ranges.isEmpty() && optionalFree.get(ranges.get(0).start()) == 0) {
+      return new ArrayList<>();
+    }
+    return ranges;
+  }
+
+  /**
+   * Returns the gaps of the horizon that are not covered by any busy range and are at least
+   * {@code duration} minutes long.
+   *
+   * @param busy The busy ranges that overlap the horizon.
+   * @param duration The minimum length of a gap in minutes.
+   * @param horizon The time to find gaps in.
+   */
+  private static List<TimeRange> findGaps(
+      BusyIndex.Intervals busy, long duration, TimeRange horizon) {
+    List<TimeRange> gaps = new ArrayList<>();
+    // The end of the busy time swept so far, which is where the next gap can start.
+    int freeFrom = horizon.start();
+    for (int i = 0; i < busy.size(); i++) {
+      if (busy.starts[i] > freeFrom) {
+        addGap(gaps, freeFrom, Math.min(busy.starts[i], horizon.end()), duration);
+      }
+      freeFrom = Math.max(freeFrom, busy.ends[i]);
+    }
+    addGap(gaps, freeFrom, horizon.end(), duration);
+    return gaps;
+  }
+
+  private static void addGap(List<TimeRange> gaps, int start, int end, long duration) {
+    if (end > start && end - start >= duration) {
+      gaps.add(TimeRange.fromStartEnd(start, end, false));
+    }
   }
 }
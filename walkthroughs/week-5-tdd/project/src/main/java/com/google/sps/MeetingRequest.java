@@ -30,6 +30,11 @@ public final class MeetingRequest {
   // The duration of the meeting in minutes.
   private final long duration;
 
+  /** Used by Gson, so that collections left out of the JSON are empty rather than null. */
+  private MeetingRequest() {
+    this(Collections.emptySet(), 0);
+  }
+
   public MeetingRequest(Collection<String> attendees, long duration) {
     this.duration = duration;
     this.attendees.addAll(attendees);
@@ -64,4 +69,14 @@ public final class MeetingRequest {
   public long getDuration() {
     return duration;
   }
+
+  /**
+   * Returns whether the request can be queried. A request read from JSON may have null
+   * attendee lists, null names or a negative duration, which the queries cannot handle.
+   */
+  public boolean isValid() {
+    return attendees != null && !attendees.contains(null)
+        && optional_attendees != null && !optional_attendees.contains(null)
+        && duration >= 0;
+  }
 }
@@ -0,0 +1,307 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A set of the minutes in a horizon, such as a day or a few weeks of epoch minutes, stored as
+ * one bit per minute so that masks can be combined a word at a time. Bits past the end of the
+ * horizon are always clear, and masks can only be combined with masks of the same horizon.
+ */
+public final class MinuteMask {
+  private final int origin;
+  private final int minutes;
+  private final long[] words;
+
+  private MinuteMask(int origin, int minutes, long[] words) {
+    this.origin = origin;
+    this.minutes = minutes;
+    this.words = words;
+  }
+
+  /** Returns a mask of the day with no minutes set. */
+  public static MinuteMask empty() {
+    return empty(TimeRange.WHOLE_DAY);
+  }
+
+  /** Returns a mask with every minute of the day set. */
+  public static MinuteMask wholeDay() {
+    return full(TimeRange.WHOLE_DAY);
+  }
+
+  /** Returns a mask of the horizon with no minutes set. */
+  public static MinuteMask empty(TimeRange horizon) {
+    int minutes = Math.max(horizon.duration(), 0);
+    return new MinuteMask(horizon.start(), minutes, new long[(minutes + Long.SIZE - 1) / Long.SIZE]);
+  }
+
+  /** Returns a mask with every minute of the horizon set. */
+  public static MinuteMask full(TimeRange horizon) {
+    MinuteMask mask = empty(horizon);
+    mask.set(horizon);
+    return mask;
+  }
+
+  /**
+   * Sets the minutes in a range. The parts of the range outside the horizon are ignored.
+   *
+   * @param range The minutes to set.
+   */
+  public void set(TimeRange range) {
+    set(range.start(), range.end());
+  }
+
+  /** Sets the minutes in every one of the ranges. */
+  void set(BusyIndex.Intervals intervals) {
+    for (int i = 0; i < intervals.size(); i++) {
+      set(intervals.starts[i], intervals.ends[i]);
+    }
+  }
+
+  private void set(int start, int end) {
+    start = Math.max(start - origin, 0);
+    end = Math.min(end - origin, minutes);
+    if (start >= end) {
+      return;
+    }
+
+    int first = start / Long.SIZE;
+    int last = (end - 1) / Long.SIZE;
+    long firstBits = -1L << start;
+    long lastBits = -1L >>> (Long.SIZE - 1 - (end - 1) % Long.SIZE);
+    if (first == last) {
+      words[first] |= firstBits & lastBits;
+      return;
+    }
+    words[first] |= firstBits;
+    for (int i = first + 1; i < last; i++) {
+      words[i] = -1L;
+    }
+    words[last] |= lastBits;
+  }
+
+  /** Sets every minute that is set in {@code other}. */
+  public void or(MinuteMask other) {
+    for (int i = 0; i < words.length; i++) {
+      words[i] |= other.words[i];
+    }
+  }
+
+  /** Clears every minute that is not set in {@code other}. */
+  public void and(MinuteMask other) {
+    for (int i = 0; i < words.length; i++) {
+      words[i] &= other.words[i];
+    }
+  }
+
+  /** Returns the minutes of the horizon that are not set in this mask. */
+  public MinuteMask complement() {
+    MinuteMask complement = full(TimeRange.fromStartDuration(origin, minutes));
+    for (int i = 0; i < words.length; i++) {
+      complement.words[i] &= ~words[i];
+    }
+    return complement;
+  }
+
+  public boolean isEmpty() {
+    for (long word : words) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public boolean contains(int minute) {
+    int bit = minute - origin;
+    return bit >= 0 && bit < minutes && (words[bit / Long.SIZE] & (1L << bit)) != 0;
+  }
+
+  /**
+   * Treating this mask as the free minutes of the horizon, returns the minutes a meeting can
+   * start at so that every minute of it is free.
+   *
+   * <p>A minute s is kept when minutes s to s + duration - 1 are all set. The runs of set
+   * minutes are widened by doubling, so this takes O(log duration) passes over the words.
+   *
+   * @param duration The length of the meeting in minutes. Meetings shorter than a minute are
+   *     treated as one minute long.
+   */
+  public MinuteMask starts(long duration) {
+    if (duration > minutes) {
+      return empty(TimeRange.fromStartDuration(origin, minutes));
+    }
+
+    int length = (int) Math.max(duration, 1);
+    MinuteMask starts = copy();
+    int covered = 1;
+    while (covered * 2 <= length) {
+      starts.and(starts.shiftDown(covered));
+      covered *= 2;
+    }
+    if (covered < length) {
+      starts.and(starts.shiftDown(length - covered));
+    }
+    return starts;
+  }
+
+  /**
+   * Turns a mask of start minutes back into the ranges a meeting of {@code duration} minutes
+   * can be held in: each run of start minutes from a to b becomes the range [a, b + duration).
+   *
+   * @param duration The length of the meeting in minutes.
+   * @return the ranges in order of start time.
+   */
+  public List<TimeRange> toRanges(long duration) {
+    int length = (int) Math.max(duration, 1);
+    List<TimeRange> ranges = new ArrayList<>();
+    int bit = nextSet(0);
+    while (bit < minutes) {
+      int runEnd = nextClear(bit);
+      ranges.add(TimeRange.fromStartEnd(origin + bit, origin + runEnd - 1 + length, false));
+      bit = nextSet(runEnd);
+    }
+    return ranges;
+  }
+
+  private MinuteMask copy() {
+    return new MinuteMask(origin, minutes, words.clone());
+  }
+
+  /** Returns the first set bit at or after {@code from}, or {@code minutes} if there is none. */
+  private int nextSet(int from) {
+    for (int i = from / Long.SIZE; i < words.length; i++) {
+      long word = i == from / Long.SIZE ? words[i] & (-1L << from) : words[i];
+      if (word != 0) {
+        return i * Long.SIZE + Long.numberOfTrailingZeros(word);
+      }
+    }
+    return minutes;
+  }
+
+  /** Returns the first clear bit at or after {@code from}, or {@code minutes} if there is none. */
+  private int nextClear(int from) {
+    for (int i = from / Long.SIZE; i < words.length; i++) {
+      long word = i == from / Long.SIZE ? ~words[i] & (-1L << from) : ~words[i];
+      if (word != 0) {
+        return Math.min(i * Long.SIZE + Long.numberOfTrailingZeros(word), minutes);
+      }
+    }
+    return minutes;
+  }
+
+  /** Returns a mask where minute s is set when minute s + distance is set in this mask. */
+  private MinuteMask shiftDown(int distance) {
+    long[] shifted = new long[words.length];
+    int wordShift = distance / Long.SIZE;
+    int bitShift = distance % Long.SIZE;
+    for (int i = 0; i + wordShift < words.length; i++) {
+      long low = words[i + wordShift] >>> bitShift;
+      long high = bitShift == 0 || i + wordShift + 1 >= words.length
+          ? 0 : words[i + wordShift + 1] << (Long.SIZE - bitShift);
+      shifted[i] = low | high;
+    }
+    return new MinuteMask(origin, minutes, shifted);
+  }
+
+  /**
+   * Counts, for every minute, how many of a group of masks have it set. The counts are kept as
+   * one mask per bit of the count, and adding a mask ripples a carry through them, so each add
+   * takes O(log n) word operations for n masks.
+   */
+  public static final class Counter {
+    private final MinuteMask[] bits;
+
+    /** @param capacity The most masks that will be added, all covering the day. */
+    public Counter(int capacity) {
+      this(capacity, TimeRange.WHOLE_DAY);
+    }
+
+    /**
+     * @param capacity The most masks that will be added.
+     * @param horizon The minutes the masks cover.
+     */
+    public Counter(int capacity, TimeRange horizon) {
+      bits = new MinuteMask[Math.max(Integer.SIZE - Integer.numberOfLeadingZeros(capacity), 1)];
+      for (int i = 0; i < bits.length; i++) {
+        bits[i] = empty(horizon);
+      }
+    }
+
+    public void add(MinuteMask mask) {
+      for (int i = 0; i < mask.words.length; i++) {
+        long carry = mask.words[i];
+        for (int b = 0; b < bits.length && carry != 0; b++) {
+          long sum = bits[b].words[i];
+          bits[b].words[i] = sum ^ carry;
+          carry = sum & carry;
+        }
+      }
+    }
+
+    /**
+     * Returns the minutes within {@code candidates} that the most masks have set. The count is
+     * decided from its highest bit down, keeping only the candidates with that bit set
+     * whenever any do.
+     *
+     * @param candidates The minutes to choose from.
+     * @return the chosen minutes, which is empty only if there were no candidates.
+     */
+    public MinuteMask max(MinuteMask candidates) {
+      MinuteMask best = candidates.copy();
+      for (int b = bits.length - 1; b >= 0; b--) {
+        MinuteMask withBit = best.copy();
+        withBit.and(bits[b]);
+        if (!withBit.isEmpty()) {
+          best = withBit;
+        }
+      }
+      return best;
+    }
+
+    /** Returns how many masks have {@code minute} set. */
+    public int get(int minute) {
+      int count = 0;
+      for (int b = 0; b < bits.length; b++) {
+        if (bits[b].contains(minute)) {
+          count |= 1 << b;
+        }
+      }
+      return count;
+    }
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof MinuteMask)) {
+      return false;
+    }
+    MinuteMask mask = (MinuteMask) other;
+    return origin == mask.origin && minutes == mask.minutes && Arrays.equals(words, mask.words);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(words) ^ origin;
+  }
+
+  @Override
+  public String toString() {
+    return "MinuteMask: " + toRanges(1);
+  }
+}
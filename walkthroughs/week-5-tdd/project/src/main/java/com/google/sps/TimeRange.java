@@ -14,11 +14,16 @@
 
 package com.google.sps;
 
+import java.time.Instant;
 import java.util.Comparator;
 
 /**
  * Class representing a span of time, enforcing properties (e.g. start comes before end) and
  * providing methods to make ranges easier to work with (e.g. {@code overlaps}).
+ *
+ * <p>Times are in minutes. Within a single day they are minutes since the start of the day (see
+ * {@code getTimeInMinutes}); ranges spanning several days use minutes since the epoch (see
+ * {@code getEpochMinutes}).
  */
 public final class TimeRange {
   public static final int START_OF_DAY = getTimeInMinutes(0, 0);
@@ -168,6 +173,20 @@ public final class TimeRange {
     return (hours * 60) + minutes;
   }
 
+  /**
+   * Returns the number of whole minutes from the epoch to {@code instant}, rounding down.
+   */
+  public static int getEpochMinutes(Instant instant) {
+    return Math.toIntExact(Math.floorDiv(instant.getEpochSecond(), 60));
+  }
+
+  /**
+   * Creates a {@code TimeRange} of epoch minutes from {@code start} to just before {@code end}.
+   */
+  public static TimeRange fromInstants(Instant start, Instant end) {
+    return fromStartEnd(getEpochMinutes(start), getEpochMinutes(end), false);
+  }
+
   /**
    * Creates a {@code TimeRange} from {@code start} to {@code end}. Whether or not {@code end} is
    * included in the range will depend on {@code inclusive}. If {@code inclusive} is {@code true},
@@ -0,0 +1,70 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.BatchMeetingQuery;
+import com.google.sps.Events;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Finds the possible times for a JSON array of meeting requests in one call. The response is
+ * an array holding the times for each request, in the same order.
+ */
+@WebServlet("/query-batch")
+public class BatchQueryServlet extends HttpServlet {
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Gson gson = new Gson();
+
+    // Convert the JSON to an array of MeetingRequests.
+    MeetingRequest[] meetingRequests;
+    try {
+      meetingRequests = gson.fromJson(request.getReader(), MeetingRequest[].class);
+    } catch (JsonParseException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected an array of requests.");
+      return;
+    }
+    if (meetingRequests == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected an array of requests.");
+      return;
+    }
+    for (MeetingRequest meetingRequest : meetingRequests) {
+      if (meetingRequest == null || !meetingRequest.isValid()) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid meeting request.");
+        return;
+      }
+    }
+
+    // Find the possible meeting times for every request at once.
+    BatchMeetingQuery batchQuery = new BatchMeetingQuery();
+    List<Collection<TimeRange>> answers = batchQuery.query(
+        Events.getBusyIndex(), Arrays.asList(meetingRequests), TimeRange.WHOLE_DAY);
+
+    // Send the JSON back as the response
+    response.setContentType("application/json");
+    response.getWriter().println(gson.toJson(answers));
+  }
+}
@@ -0,0 +1,77 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class BatchMeetingQueryTest {
+  private static final List<String> PEOPLE =
+      Arrays.asList("Person A", "Person B", "Person C", "Person D", "Person E", "Person F");
+
+  @Test
+  public void emptyBatch() {
+    List<Collection<TimeRange>> actual = new BatchMeetingQuery().query(
+        BusyIndex.build(Collections.emptyList(), 0), Collections.emptyList(), TimeRange.WHOLE_DAY);
+
+    Assert.assertEquals(Collections.emptyList(), actual);
+  }
+
+  @Test
+  public void matchesAnsweringEachRequest() {
+    // Requests share attendees, some have optional attendees and some have none at all. Each
+    // answer must be the one a single query gives, in the order of the requests.
+    Random random = new Random(11);
+    List<Event> events = new ArrayList<>();
+    for (int i = 0; i < 60; i++) {
+      int start = random.nextInt(TimeRange.WHOLE_DAY.duration());
+      events.add(new Event("Event " + i, TimeRange.fromStartDuration(start, 1 + random.nextInt(90)),
+          Arrays.asList(PEOPLE.get(random.nextInt(PEOPLE.size())))));
+    }
+    BusyIndex index = BusyIndex.build(events, 0);
+
+    List<MeetingRequest> requests = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      List<String> shuffled = new ArrayList<>(PEOPLE);
+      Collections.shuffle(shuffled, random);
+      int mandatory = random.nextInt(3);
+      MeetingRequest request =
+          new MeetingRequest(shuffled.subList(0, mandatory), 15 + random.nextInt(60));
+      for (String attendee : shuffled.subList(mandatory, mandatory + random.nextInt(3))) {
+        request.addOptionalAttendee(attendee);
+      }
+      requests.add(request);
+    }
+
+    List<Collection<TimeRange>> actual =
+        new BatchMeetingQuery().query(index, requests, TimeRange.WHOLE_DAY);
+
+    FindMeetingQuery query = new FindMeetingQuery();
+    Assert.assertEquals(requests.size(), actual.size());
+    for (int i = 0; i < requests.size(); i++) {
+      Assert.assertEquals(query.query(index, requests.get(i)), actual.get(i));
+    }
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class BusyIndexTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  @Test
+  public void rangesAreSortedAndMerged() {
+    // A's events overlap, nest and touch, and are given out of order.
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(600, 700, false), Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(100, 200, false), Arrays.asList(PERSON_A)),
+        new Event("Event 3", TimeRange.fromStartEnd(150, 300, false), Arrays.asList(PERSON_A)),
+        new Event("Event 4", TimeRange.fromStartEnd(160, 170, false), Arrays.asList(PERSON_A)),
+        new Event("Event 5", TimeRange.fromStartEnd(300, 400, false), Arrays.asList(PERSON_A)));
+
+    BusyIndex index = BusyIndex.build(events, 0);
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(100, 400, false),
+        TimeRange.fromStartEnd(600, 700, false)), index.get(PERSON_A).toRanges());
+  }
+
+  @Test
+  public void attendeesAreIndexedSeparately() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(100, 200, false),
+            Arrays.asList(PERSON_A, PERSON_B)),
+        new Event("Event 2", TimeRange.fromStartEnd(300, 400, false), Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartEnd(500, 500, false), Arrays.asList(PERSON_C)));
+
+    BusyIndex index = BusyIndex.build(events, 0);
+
+    Assert.assertEquals(
+        Arrays.asList(TimeRange.fromStartEnd(100, 200, false)), index.get(PERSON_A).toRanges());
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(100, 200, false),
+        TimeRange.fromStartEnd(300, 400, false)), index.get(PERSON_B).toRanges());
+
+    // Empty events and unknown attendees leave no busy time.
+    Assert.assertEquals(Collections.emptyList(), index.get(PERSON_C).toRanges());
+    Assert.assertEquals(Collections.emptyList(), index.get("Person D").toRanges());
+  }
+
+  @Test
+  public void attendeesAreMergedTogether() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(100, 200, false), Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(150, 250, false), Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartEnd(500, 600, false), Arrays.asList(PERSON_C)));
+
+    BusyIndex index = BusyIndex.build(events, 0);
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(100, 250, false)),
+        index.get(Arrays.asList(PERSON_A, PERSON_B), TimeRange.WHOLE_DAY).toRanges());
+  }
+
+  @Test
+  public void rangesAreClippedToWindow() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(100, 200, false), Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(300, 400, false), Arrays.asList(PERSON_A)),
+        new Event("Event 3", TimeRange.fromStartEnd(500, 600, false), Arrays.asList(PERSON_A)));
+
+    BusyIndex index = BusyIndex.build(events, 0);
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(300, 400, false)),
+        index.get(PERSON_A).within(TimeRange.fromStartEnd(200, 500, false)).toRanges());
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(100, 200, false),
+        TimeRange.fromStartEnd(300, 400, false)),
+        index.get(PERSON_A).within(TimeRange.fromStartEnd(150, 301, false)).toRanges());
+    Assert.assertEquals(Collections.emptyList(),
+        index.get(PERSON_A).within(TimeRange.fromStartEnd(700, 800, false)).toRanges());
+  }
+
+  @Test
+  public void eventsIndexIsRebuiltWhenChanged() {
+    BusyIndex index = Events.getBusyIndex();
+    Assert.assertSame(index, Events.getBusyIndex());
+
+    Events.changed();
+    BusyIndex rebuilt = Events.getBusyIndex();
+    Assert.assertNotSame(index, rebuilt);
+    Assert.assertEquals(index.getVersion() + 1, rebuilt.getVersion());
+  }
+}
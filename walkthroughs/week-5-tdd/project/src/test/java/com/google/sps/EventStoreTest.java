@@ -0,0 +1,103 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EventStoreTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private static final Comparator<Event> BY_TITLE = Comparator.comparing(Event::getTitle);
+
+  @Test
+  public void findsOverlappingEvents() {
+    //          |--1--|
+    //             |----2----|
+    //                          |--3--|
+    // Window :       |-----|
+    Event event1 = new Event("Event 1", TimeRange.fromStartEnd(100, 200, false),
+        Arrays.asList(PERSON_A));
+    Event event2 = new Event("Event 2", TimeRange.fromStartEnd(150, 400, false),
+        Arrays.asList(PERSON_A));
+    Event event3 = new Event("Event 3", TimeRange.fromStartEnd(500, 600, false),
+        Arrays.asList(PERSON_A));
+    EventStore store = EventStore.build(Arrays.asList(event1, event2, event3));
+
+    List<Event> actual = store.getEvents(PERSON_A, TimeRange.fromStartEnd(180, 300, false));
+    actual.sort(BY_TITLE);
+    Assert.assertEquals(Arrays.asList(event1, event2), actual);
+
+    // Windows that only touch an event do not overlap it.
+    Assert.assertEquals(Arrays.asList(),
+        store.getEvents(PERSON_A, TimeRange.fromStartEnd(400, 500, false)));
+    Assert.assertEquals(Arrays.asList(),
+        store.getEvents(PERSON_B, TimeRange.fromStartEnd(0, 1000, false)));
+  }
+
+  @Test
+  public void sharedEventsAreReturnedOnce() {
+    Event shared = new Event("Event 1", TimeRange.fromStartEnd(100, 200, false),
+        Arrays.asList(PERSON_A, PERSON_B));
+    EventStore store = EventStore.build(Arrays.asList(shared));
+
+    Collection<Event> actual =
+        store.getEvents(Arrays.asList(PERSON_A, PERSON_B), TimeRange.fromStartEnd(0, 300, false));
+    Assert.assertEquals(1, actual.size());
+  }
+
+  @Test
+  public void matchesScanningEveryEvent() {
+    // Compare against checking every event over a month of epoch minutes.
+    Random random = new Random(7);
+    int monthStart = 26_000_000;
+    int month = 30 * TimeRange.WHOLE_DAY.duration();
+    List<Event> events = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      int start = monthStart + random.nextInt(month);
+      int duration = 1 + random.nextInt(random.nextBoolean() ? 60 : 3000);
+      events.add(new Event("Event " + i, TimeRange.fromStartDuration(start, duration),
+          Arrays.asList(random.nextBoolean() ? PERSON_A : PERSON_B)));
+    }
+    EventStore store = EventStore.build(events);
+
+    for (int trial = 0; trial < 200; trial++) {
+      TimeRange window = TimeRange.fromStartDuration(
+          monthStart + random.nextInt(month), 1 + random.nextInt(5000));
+      List<Event> expected = new ArrayList<>();
+      for (Event event : events) {
+        if (event.getAttendees().contains(PERSON_A) && event.getWhen().overlaps(window)) {
+          expected.add(event);
+        }
+      }
+      expected.sort(BY_TITLE);
+
+      List<Event> actual = store.getEvents(PERSON_A, window);
+      actual.sort(BY_TITLE);
+      Assert.assertEquals(expected, actual);
+    }
+  }
+}
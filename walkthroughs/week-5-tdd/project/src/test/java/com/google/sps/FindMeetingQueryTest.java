@@ -14,11 +14,13 @@
 
 package com.google.sps;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -34,6 +36,8 @@ public final class FindMeetingQueryTest {
   // Some people that we can use in our tests.
   private static final String PERSON_A = "Person A";
   private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+  private static final String PERSON_D = "Person D";
 
   // All dates are the first day of the year 2020.
   private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
@@ -270,5 +274,253 @@ public final class FindMeetingQueryTest {
 
     Assert.assertEquals(expected, actual);
   }
-}
 
+  @Test
+  public void busyUntilEndOfDayLeavesNoEmptyOption() {
+    // A meeting with no duration should not be offered the empty range at the end of the day.
+    //
+    // Events  :       |--------A--------|
+    // Day     : |-----------------------|
+    // Options : |--1--|
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TIME_0800AM, TimeRange.END_OF_DAY, true),
+            Arrays.asList(PERSON_A)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), 0);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test(timeout = 5000)
+  public void manyEvents() {
+    // Give each person a 30 minute event every hour, in reverse order so the query has to sort
+    // them. Only the half hours after each event are free.
+    List<Event> events = new ArrayList<>();
+    for (int person = 0; person < 10000; person++) {
+      for (int hour = 23; hour >= 0; hour--) {
+        events.add(new Event("Event " + person + " " + hour,
+            TimeRange.fromStartDuration(hour * 60, DURATION_30_MINUTES),
+            Arrays.asList("Person " + person)));
+      }
+    }
+
+    List<String> attendees = new ArrayList<>();
+    for (int person = 0; person < 10000; person += 2) {
+      attendees.add("Person " + person);
+    }
+    MeetingRequest request = new MeetingRequest(attendees, DURATION_30_MINUTES);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    List<TimeRange> expected = new ArrayList<>();
+    for (int hour = 0; hour < 24; hour++) {
+      expected.add(TimeRange.fromStartDuration(hour * 60 + 30, DURATION_30_MINUTES));
+    }
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void optionalAttendeeIsConsidered() {
+    // C is optional and busy in the middle of the day, so the option around C's event is split.
+    //
+    // Events  :       |--A--|     |--B--|
+    //                       |--C--|
+    // Day     : |-----------------------------|
+    // Options : |--1--|                 |--2--|
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartDuration(TIME_0830AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_C)));
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_C);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+            TimeRange.fromStartEnd(TIME_0930AM, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void busyOptionalAttendeeIsIgnored() {
+    // C is optional and busy all day, so the options are the same as without C.
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.WHOLE_DAY, Arrays.asList(PERSON_C)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_C);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+            TimeRange.fromStartEnd(TIME_0830AM, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void mostOptionalAttendeesAreChosen() {
+    // No time suits every optional attendee, but two of them can come from 9:00 to 10:00 and
+    // from 11:00 on.
+    //
+    // Events  : |--A--|
+    //           |--------B-------------|
+    //                 |--C--|     |---------D---------|
+    // Day     : |-------------------------------------|
+    // Options :             |--1--|    |------2-------|
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_1100AM, false),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false),
+            Arrays.asList(PERSON_C)),
+        new Event("Event 4", TimeRange.fromStartEnd(TIME_1000AM, TimeRange.END_OF_DAY, true),
+            Arrays.asList(PERSON_D)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_B);
+    request.addOptionalAttendee(PERSON_C);
+    request.addOptionalAttendee(PERSON_D);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false),
+            TimeRange.fromStartEnd(TIME_1100AM, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void onlyOptionalAttendees() {
+    // With no mandatory attendees, the options are the times the optional attendees are free.
+    //
+    // Events  :       |--A--|     |--B--|
+    // Day     : |-----------------------------|
+    // Options : |--1--|     |--2--|     |--3--|
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_B)));
+
+    MeetingRequest request = new MeetingRequest(NO_ATTENDEES, DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_A);
+    request.addOptionalAttendee(PERSON_B);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+            TimeRange.fromStartEnd(TIME_0830AM, TIME_0900AM, false),
+            TimeRange.fromStartEnd(TIME_0930AM, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void noOptionsWhenNoOptionalAttendeeCanCome() {
+    // With no mandatory attendees and every optional attendee busy, there is no meeting to hold.
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.WHOLE_DAY, Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.WHOLE_DAY, Arrays.asList(PERSON_B)));
+
+    MeetingRequest request = new MeetingRequest(NO_ATTENDEES, DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_A);
+    request.addOptionalAttendee(PERSON_B);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected = Arrays.asList();
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void freeOptionalAttendeeMatchesSweep() {
+    // An optional attendee with no events should not change the options, so both ways of
+    // answering the query must agree.
+    Random random = new Random(42);
+    for (int trial = 0; trial < 100; trial++) {
+      List<Event> events = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        int start = random.nextInt(TimeRange.WHOLE_DAY.duration());
+        int duration = 1 + random.nextInt(120);
+        events.add(new Event("Event " + i, TimeRange.fromStartDuration(start, duration),
+            Arrays.asList(random.nextBoolean() ? PERSON_A : PERSON_B)));
+      }
+      long duration = 1 + random.nextInt(90);
+
+      MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), duration);
+      Collection<TimeRange> expected = query.query(events, request);
+      request.addOptionalAttendee(PERSON_C);
+      Collection<TimeRange> actual = query.query(events, request);
+
+      Assert.assertEquals(expected, actual);
+    }
+  }
+
+  @Test
+  public void searchesAcrossDays() {
+    // Over the first two days of 2020, B is busy until 8:00 on the second day and both are busy
+    // from 10:00 that day, so the only option is from 8:00 to 10:00 on the second day.
+    int day = TimeRange.WHOLE_DAY.duration();
+    int jan1 = TimeRange.getEpochMinutes(Instant.parse("2020-01-01T00:00:00Z"));
+    Collection<Event> events = Arrays.asList(
+        new Event("Night 1 A", TimeRange.fromStartEnd(jan1 + TIME_1100AM, jan1 + day, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Night 1 B", TimeRange.fromStartEnd(jan1, jan1 + day + TIME_0800AM, false),
+            Arrays.asList(PERSON_B)),
+        new Event("Night 2", TimeRange.fromStartEnd(jan1 + day + TIME_1000AM, jan1 + 2 * day,
+            false), Arrays.asList(PERSON_A, PERSON_B)));
+    EventStore store = EventStore.build(events);
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_90_MINUTES);
+    TimeRange horizon = TimeRange.fromStartDuration(jan1, 2 * day);
+
+    Collection<TimeRange> actual = query.query(store, request, horizon);
+    Collection<TimeRange> expected = Arrays.asList(
+        TimeRange.fromStartEnd(jan1 + day + TIME_0800AM, jan1 + day + TIME_1000AM, false));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void horizonLimitsOptions() {
+    // Options are cut off at the ends of the horizon, including for optional attendees.
+    int jan1 = TimeRange.getEpochMinutes(Instant.parse("2020-01-01T00:00:00Z"));
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(jan1 + TIME_0900AM, jan1 + TIME_1000AM,
+            false), Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(jan1 + TIME_0830AM, jan1 + TIME_0900AM,
+            false), Arrays.asList(PERSON_C)));
+    EventStore store = EventStore.build(events);
+    TimeRange horizon = TimeRange.fromStartEnd(jan1 + TIME_0800AM, jan1 + TIME_1100AM, false);
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartEnd(jan1 + TIME_0800AM, jan1 + TIME_0900AM, false),
+            TimeRange.fromStartEnd(jan1 + TIME_1000AM, jan1 + TIME_1100AM, false));
+    Assert.assertEquals(expected, query.query(store, request, horizon));
+
+    request.addOptionalAttendee(PERSON_C);
+    expected = Arrays.asList(TimeRange.fromStartEnd(jan1 + TIME_0800AM, jan1 + TIME_0830AM, false),
+        TimeRange.fromStartEnd(jan1 + TIME_1000AM, jan1 + TIME_1100AM, false));
+    Assert.assertEquals(expected, query.query(store, request, horizon));
+  }
+}
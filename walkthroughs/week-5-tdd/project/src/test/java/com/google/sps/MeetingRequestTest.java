@@ -14,6 +14,7 @@
 
 package com.google.sps;
 
+import com.google.gson.Gson;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -44,4 +45,46 @@ public final class MeetingRequestTest {
     int expected = 0;
     Assert.assertEquals(expected, actual);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void missingOptionalAttendeesAreEmpty() {
+    // The page only sends the duration and mandatory attendees.
+    MeetingRequest request = new Gson().fromJson(
+        "{\"duration\": 30, \"attendees\": [\"Person A\"]}", MeetingRequest.class);
+
+    Assert.assertEquals(30, request.getDuration());
+    Assert.assertEquals(Arrays.asList(PERSON_A), new ArrayList<>(request.getAttendees()));
+    Assert.assertTrue(request.getOptionalAttendees().isEmpty());
+  }
+
+  @Test
+  public void requestFromCompleteJsonIsValid() {
+    MeetingRequest request = new Gson().fromJson(
+        "{\"duration\": 30, \"attendees\": [\"Person A\"]}", MeetingRequest.class);
+
+    Assert.assertTrue(request.isValid());
+  }
+
+  @Test
+  public void nullAttendeesAreInvalid() {
+    MeetingRequest request = new Gson().fromJson(
+        "{\"duration\": 30, \"attendees\": null}", MeetingRequest.class);
+
+    Assert.assertFalse(request.isValid());
+  }
+
+  @Test
+  public void nullAttendeeNameIsInvalid() {
+    MeetingRequest request = new Gson().fromJson(
+        "{\"duration\": 30, \"optional_attendees\": [null]}", MeetingRequest.class);
+
+    Assert.assertFalse(request.isValid());
+  }
+
+  @Test
+  public void negativeDurationIsInvalid() {
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), -DURATION_1_HOUR);
+
+    Assert.assertFalse(request.isValid());
+  }
+}
@@ -0,0 +1,103 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class MinuteMaskTest {
+  @Test
+  public void setAcrossWords() {
+    // Minutes 60 to 199 span the first, second and third words.
+    MinuteMask mask = MinuteMask.empty();
+    mask.set(TimeRange.fromStartEnd(60, 200, false));
+
+    Assert.assertFalse(mask.contains(59));
+    Assert.assertTrue(mask.contains(60));
+    Assert.assertTrue(mask.contains(128));
+    Assert.assertTrue(mask.contains(199));
+    Assert.assertFalse(mask.contains(200));
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(60, 200, false)), mask.toRanges(1));
+  }
+
+  @Test
+  public void complementOfEmptyIsWholeDay() {
+    Assert.assertEquals(MinuteMask.wholeDay(), MinuteMask.empty().complement());
+    Assert.assertEquals(
+        Arrays.asList(TimeRange.WHOLE_DAY), MinuteMask.empty().complement().toRanges(1));
+  }
+
+  @Test
+  public void startsLeaveRoomForTheMeeting() {
+    // Free from 100 to 250 and from 300 to the end of the day.
+    MinuteMask free = MinuteMask.wholeDay();
+    MinuteMask busy = MinuteMask.empty();
+    busy.set(TimeRange.fromStartEnd(0, 100, false));
+    busy.set(TimeRange.fromStartEnd(250, 300, false));
+    free.and(busy.complement());
+
+    MinuteMask starts = free.starts(100);
+    Assert.assertTrue(starts.contains(100));
+    Assert.assertTrue(starts.contains(150));
+    Assert.assertFalse(starts.contains(151));
+    Assert.assertTrue(starts.contains(TimeRange.WHOLE_DAY.end() - 100));
+    Assert.assertFalse(starts.contains(TimeRange.WHOLE_DAY.end() - 99));
+
+    List<TimeRange> expected = Arrays.asList(TimeRange.fromStartEnd(100, 250, false),
+        TimeRange.fromStartEnd(300, TimeRange.END_OF_DAY, true));
+    Assert.assertEquals(expected, starts.toRanges(100));
+  }
+
+  @Test
+  public void noStartsForMeetingLongerThanADay() {
+    Assert.assertTrue(MinuteMask.wholeDay().starts(TimeRange.WHOLE_DAY.duration() + 1).isEmpty());
+    Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY),
+        MinuteMask.wholeDay().starts(TimeRange.WHOLE_DAY.duration()).toRanges(
+            TimeRange.WHOLE_DAY.duration()));
+  }
+
+  @Test
+  public void counterFindsMinutesMostMasksHave() {
+    MinuteMask a = MinuteMask.empty();
+    a.set(TimeRange.fromStartEnd(0, 600, false));
+    MinuteMask b = MinuteMask.empty();
+    b.set(TimeRange.fromStartEnd(500, 700, false));
+    MinuteMask c = MinuteMask.empty();
+    c.set(TimeRange.fromStartEnd(550, 1000, false));
+
+    MinuteMask.Counter counter = new MinuteMask.Counter(3);
+    counter.add(a);
+    counter.add(b);
+    counter.add(c);
+
+    Assert.assertEquals(1, counter.get(0));
+    Assert.assertEquals(3, counter.get(575));
+    Assert.assertEquals(0, counter.get(1200));
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(550, 600, false)),
+        counter.max(MinuteMask.wholeDay()).toRanges(1));
+
+    // Only the candidates are considered.
+    MinuteMask candidates = MinuteMask.empty();
+    candidates.set(TimeRange.fromStartEnd(800, 1440, false));
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(800, 1000, false)),
+        counter.max(candidates).toRanges(1));
+  }
+}
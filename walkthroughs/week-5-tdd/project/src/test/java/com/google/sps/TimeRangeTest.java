@@ -14,6 +14,7 @@
 
 package com.google.sps;
 
+import java.time.Instant;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -184,4 +185,17 @@ public final class TimeRangeTest {
     Assert.assertTrue(emptyMiddle.overlaps(range));
     Assert.assertTrue(emptyEnd.overlaps(range));
   }
+
+  @Test
+  public void epochMinutes() {
+    Assert.assertEquals(0, TimeRange.getEpochMinutes(Instant.EPOCH));
+    Assert.assertEquals(1, TimeRange.getEpochMinutes(Instant.ofEpochSecond(119)));
+    Assert.assertEquals(-1, TimeRange.getEpochMinutes(Instant.ofEpochSecond(-1)));
+
+    // A range can span several days.
+    Instant start = Instant.parse("2020-01-01T09:00:00Z");
+    TimeRange range = TimeRange.fromInstants(start, Instant.parse("2020-01-03T09:00:00Z"));
+    Assert.assertEquals(TimeRange.getEpochMinutes(start), range.start());
+    Assert.assertEquals(2 * TimeRange.WHOLE_DAY.duration(), range.duration());
+  }
 }